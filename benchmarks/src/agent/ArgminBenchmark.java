@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import data.Plan;
+import data.Vector;
+import func.VarCostFunction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the plan selection of an agent: {@link Optimization#argmin}
+ * over the possible plans, each combined with the response of the other
+ * agents, as in {@link IeposPlanSelector}. A non-zero lambda adds the
+ * lambda-PREF term of the local cost.
+ *
+ * @author Peter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgminBenchmark {
+
+    @Param({"24", "144", "1440"})
+    public int dims;
+
+    @Param({"16", "64", "256", "1024", "4096"})
+    public int numPlans;
+
+    @Param({"0", "0.5"})
+    public double lambda;
+
+    private Optimization optimization;
+    private VarCostFunction costFunction;
+    private List<Plan<Vector>> plans;
+    private Vector otherResponse;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        optimization = new Optimization(new Random(1));
+        costFunction = new VarCostFunction();
+        plans = new ArrayList<>();
+        for (int i = 0; i < numPlans; i++) {
+            Plan<Vector> plan = new Plan<>(randomVector(dims, random));
+            plan.setIndex(i);
+            plans.add(plan);
+        }
+        otherResponse = randomVector(dims, random);
+        otherResponse.multiply(100);
+    }
+
+    static Vector randomVector(int dims, Random random) {
+        Vector vector = new Vector(dims);
+        for (int i = 0; i < dims; i++) {
+            vector.setValue(i, random.nextGaussian());
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public int argmin() {
+        return optimization.argmin(costFunction, plans, otherResponse, lambda);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import data.Vector;
+import func.VarCostFunction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the approval of the children of an agent, as in
+ * {@link IeposAgent}: every child offers its previous and its new subtree
+ * response, {@link Optimization#calcAllCombinations} sums up all 2^fanOut
+ * combinations and {@link Optimization#argmin} selects the best one.
+ * <p>
+ * The combinations of a fan-out of 16 with 1440 dimensions take about 750 MB,
+ * so the benchmark runs with a larger heap.
+ *
+ * @author Peter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class CombinationBenchmark {
+
+    @Param({"24", "144", "1440"})
+    public int dims;
+
+    @Param({"2", "4", "8", "12", "16"})
+    public int fanOut;
+
+    private Optimization optimization;
+    private VarCostFunction costFunction;
+    private List<List<Vector>> choicesPerChild;
+    private List<Vector> combinations;
+    private Vector othersResponse;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        optimization = new Optimization(new Random(1));
+        costFunction = new VarCostFunction();
+        choicesPerChild = new ArrayList<>();
+        for (int i = 0; i < fanOut; i++) {
+            List<Vector> choices = new ArrayList<>();
+            choices.add(ArgminBenchmark.randomVector(dims, random));
+            choices.add(ArgminBenchmark.randomVector(dims, random));
+            choicesPerChild.add(choices);
+        }
+        combinations = optimization.calcAllCombinations(choicesPerChild);
+        othersResponse = ArgminBenchmark.randomVector(dims, random);
+    }
+
+    /**
+     * Computes the combinations into new vectors.
+     */
+    @Benchmark
+    public List<Vector> calcAllCombinations() {
+        return optimization.calcAllCombinations(choicesPerChild);
+    }
+
+    /**
+     * Computes the combinations into the vectors of the previous invocation,
+     * as agents with recycled buffers do.
+     */
+    @Benchmark
+    public List<Vector> calcAllCombinationsRecycled() {
+        return optimization.calcAllCombinations(choicesPerChild, combinations);
+    }
+
+    /**
+     * Computes the combinations and selects the best one.
+     */
+    @Benchmark
+    public int approve() {
+        optimization.calcAllCombinations(choicesPerChild, combinations);
+        return optimization.argmin(costFunction, combinations, othersResponse);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import data.Vector;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of encoding and decoding an I-EPOS message for every
+ * {@link MessageCodec.Encoding}. Like the live transport, every message is
+ * serialized with its own object stream. The loopback benchmark sends a
+ * length-prefixed message through a local TCP connection and decodes it on the
+ * other end. The encode benchmark also counts the encoded bytes; divided by
+ * the encode throughput they give the bytes per message.
+ *
+ * @author Peter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"24", "144", "1440"})
+    public int dims;
+
+    @Param({"OBJECT", "FLOAT64", "FLOAT32"})
+    public MessageCodec.Encoding encoding;
+
+    private IeposAgent.DownMessage<Vector> msg;
+    private byte[] encoded;
+
+    private ServerSocket server;
+    private Socket client;
+    private Socket connection;
+    private DataOutputStream out;
+    private DataInputStream in;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        MessageCodec.setEncoding(encoding);
+        Random random = new Random(0);
+        Vector vector = new Vector(dims);
+        for (int i = 0; i < dims; i++) {
+            vector.setValue(i, random.nextGaussian());
+        }
+        msg = new IeposAgent.DownMessage<>(vector, true);
+        msg.numAgents = 1000;
+        msg.cumTransmitted = 12345;
+        msg.cumComputed = 67890;
+        encoded = serialize(msg);
+
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        connection = server.accept();
+        client.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        connection.close();
+        server.close();
+        MessageCodec.setEncoding(MessageCodec.Encoding.FLOAT64);
+    }
+
+    @Benchmark
+    public byte[] encode(Bytes counter) throws IOException {
+        byte[] bytes = serialize(msg);
+        counter.bytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object decode() throws IOException, ClassNotFoundException {
+        return deserialize(encoded);
+    }
+
+    @Benchmark
+    public Object loopback() throws IOException, ClassNotFoundException {
+        byte[] bytes = serialize(msg);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+
+        byte[] received = new byte[in.readInt()];
+        in.readFully(received);
+        return deserialize(received);
+    }
+
+    private static byte[] serialize(Object msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(msg);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package data;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the {@link Vector} operations the agents use in every
+ * iteration. The in-place operations modify a buffer that is reset from the
+ * input in the same invocation, so the values stay bounded.
+ *
+ * @author Peter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+
+    @Param({"24", "144", "1440"})
+    public int dims;
+
+    private Vector a;
+    private Vector b;
+    private Vector buffer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        a = randomVector(dims, random);
+        b = randomVector(dims, random);
+        buffer = a.cloneThis();
+    }
+
+    private static Vector randomVector(int dims, Random random) {
+        Vector vector = new Vector(dims);
+        for (int i = 0; i < dims; i++) {
+            vector.setValue(i, random.nextGaussian());
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public Vector setAdd() {
+        buffer.set(a);
+        buffer.add(b);
+        return buffer;
+    }
+
+    @Benchmark
+    public Vector setSubtract() {
+        buffer.set(a);
+        buffer.subtract(b);
+        return buffer;
+    }
+
+    @Benchmark
+    public Vector setMultiply() {
+        buffer.set(a);
+        buffer.multiply(b);
+        return buffer;
+    }
+
+    @Benchmark
+    public double dot() {
+        return a.dot(b);
+    }
+
+    @Benchmark
+    public double sum() {
+        return a.sum();
+    }
+
+    @Benchmark
+    public double variance() {
+        return a.variance();
+    }
+
+    @Benchmark
+    public double std() {
+        return a.std();
+    }
+
+    @Benchmark
+    public double normSqr() {
+        return a.normSqr();
+    }
+
+    @Benchmark
+    public Vector cloneThis() {
+        return a.cloneThis();
+    }
+
+    @Benchmark
+    public Vector cloneNew() {
+        return a.cloneNew();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package func;
+
+import data.Vector;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link CostFunction#calcCost} and
+ * {@link DifferentiableCostFunction#calcGradient} of the global cost functions.
+ *
+ * @author Peter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CostFunctionBenchmark {
+
+    @Param({"24", "144", "1440"})
+    public int dims;
+
+    @Param({"VAR", "STD", "SQR_DIST", "DOT"})
+    public String costFunction;
+
+    private DifferentiableCostFunction<Vector> func;
+    private Vector vector;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        vector = randomVector(dims, random);
+        func = create(costFunction, randomVector(dims, random));
+    }
+
+    static DifferentiableCostFunction<Vector> create(String name, Vector target) {
+        switch (name) {
+            case "VAR":
+                return new VarCostFunction();
+            case "STD":
+                return new StdDevCostFunction();
+            case "SQR_DIST":
+                return new SqrDistCostFunction(target);
+            case "DOT":
+                DotCostFunction dot = new DotCostFunction();
+                dot.setCostVector(target);
+                return dot;
+            default:
+                throw new IllegalArgumentException("unknown cost function: " + name);
+        }
+    }
+
+    private static Vector randomVector(int dims, Random random) {
+        Vector vector = new Vector(dims);
+        for (int i = 0; i < dims; i++) {
+            vector.setValue(i, random.nextGaussian());
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public double calcCost() {
+        return func.calcCost(vector);
+    }
+
+    @Benchmark
+    public Vector calcGradient() {
+        return func.calcGradient(vector);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The decision of an agent which changes of its children it approves.
+ *
+ * @author Peter
+ */
+@Name("epos.Approval")
+@StackTrace(false)
+@Label("Approval")
+@Category({"EPOS", "Agent"})
+@Description("An agent approves or rejects the changed subtree responses of its children")
+public class ApprovalEvent extends Event {
+
+    @Label("Agent")
+    public int agent;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Children")
+    @Description("Number of children that took part in the decision")
+    public int children;
+
+    @Label("Combinations")
+    @Description("Number of combinations of old and new responses that were evaluated")
+    public int combinations;
+
+    @Label("Approved")
+    @Description("Number of children whose changes were approved")
+    public int approved;
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An iteration as seen by the root, from the start of its iteration until it
+ * sent the global response to its children.
+ *
+ * @author Peter
+ */
+@Name("epos.Iteration")
+@StackTrace(false)
+@Label("Iteration")
+@Category({"EPOS", "Agent"})
+@Description("An iteration at the root of the tree")
+public class IterationEvent extends Event {
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Agents")
+    @Description("Number of agents in the tree")
+    public int numAgents;
+
+    @Label("Changed Plans")
+    @Description("Number of agents that changed their plan in the previous iteration")
+    public int numChanged;
+
+    @Label("Terminated")
+    public boolean terminated;
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.jfr;
+
+import java.util.List;
+
+/**
+ * Emits the events of the agents to Java Flight Recorder. Loaded by
+ * {@link EventRecorder#get()} if JFR is available. Events that are disabled
+ * in the recording settings are not created at all.
+ *
+ * @author Peter
+ */
+public class JfrEventRecorder extends EventRecorder {
+
+    @Override
+    public Object beginIteration() {
+        IterationEvent event = new IterationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endIteration(Object obj, int iteration, int numAgents, int numChanged, boolean terminated) {
+        IterationEvent event = (IterationEvent) obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.iteration = iteration;
+            event.numAgents = numAgents;
+            event.numChanged = numChanged;
+            event.terminated = terminated;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginPlanSelection() {
+        PlanSelectionEvent event = new PlanSelectionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endPlanSelection(Object obj, int agent, int iteration, int selected, int candidates) {
+        PlanSelectionEvent event = (PlanSelectionEvent) obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.agent = agent;
+            event.iteration = iteration;
+            event.selected = selected;
+            event.candidates = candidates;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginApproval() {
+        ApprovalEvent event = new ApprovalEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endApproval(Object obj, int agent, int iteration, int combinations, List<Integer> selections) {
+        ApprovalEvent event = (ApprovalEvent) obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.agent = agent;
+            event.iteration = iteration;
+            event.children = selections.size();
+            event.combinations = combinations;
+            event.approved = (int) selections.stream().filter(selection -> selection == 1).count();
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginMessageSend() {
+        MessageSendEvent event = new MessageSendEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endMessageSend(Object obj, int agent, Class<?> type, int bytes) {
+        MessageSendEvent event = (MessageSendEvent) obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.agent = agent;
+            event.type = type;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+}
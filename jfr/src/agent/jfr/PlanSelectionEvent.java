@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The selection of a plan by an agent.
+ *
+ * @author Peter
+ */
+@Name("epos.PlanSelection")
+@StackTrace(false)
+@Label("Plan Selection")
+@Category({"EPOS", "Agent"})
+@Description("An agent selects one of its possible plans")
+public class PlanSelectionEvent extends Event {
+
+    @Label("Agent")
+    public int agent;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Selected Plan")
+    @Description("Index of the selected plan")
+    public int selected;
+
+    @Label("Candidates")
+    @Description("Number of plans the agent chose from")
+    public int candidates;
+}
@@ -9,7 +9,11 @@ import data.Plan;
 import func.CostFunction;
 import func.PlanCostFunction;
 import agent.logging.AgentLoggingProvider;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import protopeer.BasePeerlet;
@@ -28,23 +32,31 @@ import data.DataType;
 public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
 
     // misc
-    final Random random = new Random();
+    Random random = new Random(); // replaced when a checkpoint is restored
 
     // logging
     private final AgentLoggingProvider loggingProvider;
 
     // combinatorial optimization variables
     Plan<V> selectedPlan;
+    int selectedPlanIdx = -1; // position of the selected plan, -1 if unknown
     V globalResponse;
     final List<Plan<V>> possiblePlans = new ArrayList<>();
+    // local cost and normalized rank of each possible plan, computed once
+    double[] localCosts = new double[0];
+    double[] localRanks = new double[0];
     final CostFunction<V> globalCostFunc;
     final PlanCostFunction<V> localCostFunc;
 
     // logging stuff
+    boolean logPerEpoch = true;
+    private boolean terminationLogged;
     int numTransmitted;
     int numComputed;
     int cumTransmitted;
     int cumComputed;
+    int numBytesTransmitted;
+    long cumBytesTransmitted;
 
     /**
      * Initializes the agent with the given combinatorial optimization problem
@@ -56,13 +68,10 @@ public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
      * @param loggingProvider the logger for the experiment
      */
     public Agent(List<Plan<V>> possiblePlans, CostFunction<V> globalCostFunc, PlanCostFunction<V> localCostFunc, AgentLoggingProvider<? extends Agent> loggingProvider) {
-        this.possiblePlans.addAll(possiblePlans);
-        if(localCostFunc != null) {
-            this.possiblePlans.sort((plan1, plan2) -> (int)Math.signum(localCostFunc.calcCost(plan1) - localCostFunc.calcCost(plan2)));
-        }
         this.globalCostFunc = globalCostFunc;
         this.localCostFunc = localCostFunc;
         this.loggingProvider = loggingProvider;
+        setPossiblePlans(possiblePlans);
     }
 
     /**
@@ -80,6 +89,84 @@ public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
         random.setSeed(seed);
     }
 
+    /**
+     * Initializes the agent with the plans of another agent. The plans are
+     * already ordered, and their local costs and ranks are shared instead of
+     * computed again. The local cost function is the one of the other agent.
+     *
+     * @param planSource the agent whose plans are used
+     * @param globalCostFunc the global cost function
+     * @param loggingProvider the logger for the experiment
+     * @param seed the seed for the RNG used by this agent
+     */
+    Agent(Agent<V> planSource, CostFunction<V> globalCostFunc, AgentLoggingProvider<? extends Agent> loggingProvider, long seed) {
+        this.globalCostFunc = globalCostFunc;
+        this.localCostFunc = planSource.localCostFunc;
+        this.loggingProvider = loggingProvider;
+        setPossiblePlans(planSource.possiblePlans, planSource.localCosts, planSource.localRanks);
+        random.setSeed(seed);
+    }
+
+    /**
+     * Replaces the possible plans of this agent. The plans are ordered by
+     * their local cost, which is computed once per plan and kept together
+     * with the normalized rank of each plan.
+     *
+     * @param possiblePlans the new possible plans
+     */
+    void setPossiblePlans(List<Plan<V>> possiblePlans) {
+        int numPlans = possiblePlans.size();
+        this.possiblePlans.clear();
+        if(localCostFunc != null) {
+            double[] costs = new double[numPlans];
+            Integer[] order = new Integer[numPlans];
+            for (int i = 0; i < numPlans; i++) {
+                costs[i] = localCostFunc.calcCost(possiblePlans.get(i));
+                order[i] = i;
+            }
+            // stable, so plans with equal cost keep their order
+            Arrays.sort(order, (i, j) -> costs[i] < costs[j] ? -1 : (costs[i] > costs[j] ? 1 : 0));
+            localCosts = new double[numPlans];
+            for (int i = 0; i < numPlans; i++) {
+                this.possiblePlans.add(possiblePlans.get(order[i]));
+                localCosts[i] = costs[order[i]];
+            }
+        } else {
+            this.possiblePlans.addAll(possiblePlans);
+            localCosts = new double[0];
+        }
+        localRanks = new double[numPlans];
+        for (int i = 0; i < numPlans; i++) {
+            localRanks[i] = i / (double) numPlans;
+        }
+    }
+
+    /**
+     * Selects one of the possible plans.
+     *
+     * @param idx the position of the plan in the possible plans
+     */
+    void setSelectedPlan(int idx) {
+        selectedPlan = possiblePlans.get(idx);
+        selectedPlanIdx = idx;
+    }
+
+    /**
+     * Replaces the possible plans of this agent with plans that are already
+     * ordered by their local cost. The arrays are shared, not copied; they
+     * are never modified.
+     *
+     * @param sortedPlans the new possible plans, ordered by local cost
+     * @param localCosts the local cost of each plan
+     * @param localRanks the normalized rank of each plan
+     */
+    void setPossiblePlans(List<Plan<V>> sortedPlans, double[] localCosts, double[] localRanks) {
+        this.possiblePlans.clear();
+        this.possiblePlans.addAll(sortedPlans);
+        this.localCosts = localCosts;
+        this.localRanks = localRanks;
+    }
+
     V createValue() {
         return possiblePlans.get(0).getValue().cloneNew();
     }
@@ -118,6 +205,20 @@ public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
         return localCostFunc;
     }
 
+    /**
+     * Returns the local cost of the selected plan. The costs of the possible
+     * plans are computed once when the plans are set; a selected plan whose
+     * position is not known is evaluated by the local cost function.
+     *
+     * @return the local cost of the selected plan
+     */
+    public double getSelectedLocalCost() {
+        if (selectedPlanIdx >= 0 && selectedPlanIdx < localCosts.length && possiblePlans.get(selectedPlanIdx) == selectedPlan) {
+            return localCosts[selectedPlanIdx];
+        }
+        return localCostFunc.calcCost(selectedPlan);
+    }
+
     public int getIteration() {
         return 0;
     }
@@ -126,6 +227,14 @@ public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
         return 1;
     }
 
+    /**
+     * @return true, if this agent finished its computation early and stays
+     * idle from now on
+     */
+    public boolean isTerminated() {
+        return false;
+    }
+
     public boolean isRepresentative() {
         return getPeer().getIndexNumber() == 0;
     }
@@ -146,6 +255,22 @@ public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
         return cumComputed;
     }
 
+    /**
+     * @return the number of payload bytes this agent sent and received in the
+     * current iteration
+     */
+    public int getNumBytesTransmitted() {
+        return numBytesTransmitted;
+    }
+
+    /**
+     * @return the number of payload bytes transmitted along the critical path
+     * up to this agent
+     */
+    public long getCumBytesTransmitted() {
+        return cumBytesTransmitted;
+    }
+
     private void runBootstrap() {
         Timer loadAgentTimer = getPeer().getClock().createNewTimer();
         loadAgentTimer.addTimerListener(new TimerListener() {
@@ -168,17 +293,134 @@ public abstract class Agent<V extends DataType<V>> extends BasePeerlet {
 
     private void initPhase() {
         loggingProvider.init(this);
+        terminationLogged = false;
 
         numTransmitted = 0;
         numComputed = 0;
         cumTransmitted = 0;
         cumComputed = 0;
+        numBytesTransmitted = 0;
+        cumBytesTransmitted = 0;
     }
 
     abstract void runPhase();
 
+    /**
+     * Writes the state of this agent that changes while it runs, including
+     * the state of its loggers, see {@link Checkpoint}. The configuration and
+     * the possible plans are not written; they are set when the agent is
+     * created.
+     *
+     * @param out the output stream
+     * @throws IOException if the state cannot be written
+     */
+    void writeState(ObjectOutputStream out) throws IOException {
+        writePlan(out, selectedPlan);
+        MessageCodec.writeValue(out, globalResponse, MessageCodec.Encoding.FLOAT64);
+        out.writeObject(random);
+        out.writeInt(numTransmitted);
+        out.writeInt(numComputed);
+        out.writeInt(cumTransmitted);
+        out.writeInt(cumComputed);
+        out.writeInt(numBytesTransmitted);
+        out.writeLong(cumBytesTransmitted);
+        loggingProvider.writeState(out);
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(ObjectOutputStream)}.
+     *
+     * @param in the input stream
+     * @throws IOException if the state cannot be read
+     * @throws ClassNotFoundException if the state contains unknown classes
+     */
+    void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        selectedPlan = readPlan(in);
+        selectedPlanIdx = positionOf(selectedPlan);
+        globalResponse = readValue(in, globalResponse);
+        random = (Random) in.readObject();
+        numTransmitted = in.readInt();
+        numComputed = in.readInt();
+        cumTransmitted = in.readInt();
+        cumComputed = in.readInt();
+        numBytesTransmitted = in.readInt();
+        cumBytesTransmitted = in.readLong();
+        loggingProvider.readState(in);
+    }
+
+    /**
+     * @param plan a plan
+     * @return the position of the plan in the possible plans or -1 if it is
+     * not one of them
+     */
+    int positionOf(Plan<V> plan) {
+        for (int i = 0; i < possiblePlans.size() && plan != null; i++) {
+            if (possiblePlans.get(i) == plan) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a plan as its position in the possible plans or, if it is not one
+     * of them, as its value.
+     */
+    void writePlan(ObjectOutputStream out, Plan<V> plan) throws IOException {
+        int idx = positionOf(plan);
+        out.writeInt(plan == null ? -2 : idx);
+        if (plan != null && idx < 0) {
+            MessageCodec.writeValue(out, plan.getValue(), MessageCodec.Encoding.FLOAT64);
+        }
+    }
+
+    Plan<V> readPlan(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        int idx = in.readInt();
+        if (idx >= 0) {
+            return possiblePlans.get(idx);
+        } else if (idx == -1) {
+            Plan<V> plan = createPlan();
+            plan.getValue().set(MessageCodec.readValue(in));
+            return plan;
+        }
+        return null;
+    }
+
+    /**
+     * Reads a value and copies it into the given buffer, such that references
+     * to the buffer stay valid.
+     */
+    V readValue(ObjectInputStream in, V buffer) throws IOException, ClassNotFoundException {
+        V value = MessageCodec.readValue(in);
+        if (value == null || buffer == null) {
+            return value;
+        }
+        buffer.set(value);
+        return buffer;
+    }
+
+    /**
+     * Logs the current state of this agent under the given epoch. Used by
+     * agents that do not log at the regular measurement epochs.
+     *
+     * @param epochNumber the epoch used for the log entries
+     */
+    void log(int epochNumber) {
+        loggingProvider.log(getPeer().getMeasurementLogger().getMeasurementLog(), epochNumber, this);
+    }
+
     private void scheduleMeasurements() {
         getPeer().getMeasurementLogger().addMeasurementLoggerListener((MeasurementLog log, int epochNumber) -> {
+            if (!logPerEpoch) {
+                return;
+            }
+            // a terminated agent does not change anymore; its last state is logged once
+            if (isTerminated()) {
+                if (terminationLogged) {
+                    return;
+                }
+                terminationLogged = true;
+            }
             loggingProvider.log(log, epochNumber, this);
         });
     }
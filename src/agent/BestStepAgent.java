@@ -15,8 +15,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import protopeer.Finger;
-import protopeer.network.NetworkAddress;
 import data.DataType;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 /**
  *
@@ -35,7 +37,7 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
 
     @Override
     void initPhase() {
-        selectedPlan = possiblePlans.get(0);
+        setSelectedPlan(0);
         prevSelectedPlan = createPlan();
         globalResponse = createValue();
     }
@@ -53,7 +55,7 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
                 return a;
             });
             selection = optimization.argmin(globalCostFunc, possiblePlans, aggregatedResponse);
-            selectedPlan = possiblePlans.get(selection);
+            setSelectedPlan(selection);
             globalResponse = aggregatedResponse;
             globalResponse.add(possiblePlans.get(selection).getValue());
             
@@ -61,7 +63,7 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
                 ((V) a).add(b);
                 return a;
             });*/
-            return new Up<>(globalResponse, null);
+            return new Up<>(globalResponse, -1);
         } else {
             List<V> choices = childMsgs.stream().map(msg -> msg.bestChange).collect(Collectors.toList());
             List<V> possibleChanges = possiblePlans.stream()
@@ -78,10 +80,10 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
             numComputed += choices.size();
 
             V bestChange = choices.get(selectedChoice);
-            NetworkAddress bestAgent;
+            int bestAgent;
             if (selectedChoice >= childMsgs.size()) {
                 selection = selectedChoice - childMsgs.size();
-                bestAgent = getPeer().getNetworkAddress();
+                bestAgent = getPeer().getIndexNumber();
             } else {
                 bestAgent = childMsgs.get(selectedChoice).bestAgent;
             }
@@ -105,8 +107,8 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
     @Override
     List<Down<V>> down(Down<V> parentMsg) {
         globalResponse = parentMsg.globalResponse;
-        if (getPeer().getNetworkAddress().equals(parentMsg.bestAgent)) {
-            selectedPlan = possiblePlans.get(selection);
+        if (getPeer().getIndexNumber() == parentMsg.bestAgent) {
+            setSelectedPlan(selection);
         }
 
         List<Down<V>> msgs = new ArrayList<>();
@@ -118,10 +120,10 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
 
     static class Up<V extends DataType<V>> extends UpMessage {
 
-        V bestChange;
-        NetworkAddress bestAgent;
+        transient V bestChange;
+        transient int bestAgent;
 
-        public Up(V bestChange, NetworkAddress bestAgent) {
+        public Up(V bestChange, int bestAgent) {
             this.bestChange = bestChange;
             this.bestAgent = bestAgent;
         }
@@ -130,14 +132,31 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
         public int getNumTransmitted() {
             return 1;
         }
+
+        @Override
+        public int getNumBytes() {
+            return 4 + MessageCodec.sizeOf(bestChange);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(bestAgent);
+            MessageCodec.writeValue(out, bestChange);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            bestAgent = in.readInt();
+            bestChange = MessageCodec.readValue(in);
+        }
     }
 
     static class Down<V extends DataType<V>> extends DownMessage {
 
-        V globalResponse;
-        NetworkAddress bestAgent;
+        transient V globalResponse;
+        transient int bestAgent;
 
-        public Down(V globalResponse, NetworkAddress bestAgent) {
+        public Down(V globalResponse, int bestAgent) {
             this.globalResponse = globalResponse;
             this.bestAgent = bestAgent;
         }
@@ -146,5 +165,22 @@ public class BestStepAgent<V extends DataType<V>> extends IterativeTreeAgent<V,
         public int getNumTransmitted() {
             return 1;
         }
+
+        @Override
+        public int getNumBytes() {
+            return 4 + MessageCodec.sizeOf(globalResponse);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(bestAgent);
+            MessageCodec.writeValue(out, globalResponse);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            bestAgent = in.readInt();
+            globalResponse = MessageCodec.readValue(in);
+        }
     }
 }
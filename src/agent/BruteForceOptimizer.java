@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import agent.dataset.Dataset;
+import data.Plan;
+import data.Vector;
+import func.CostFunction;
+import func.SqrDistCostFunction;
+import func.StdDevCostFunction;
+import func.VarCostFunction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the combination of plans with the minimal global cost by enumerating
+ * all combinations. The enumeration is a depth-first search over the agents
+ * that keeps the partial sum of each depth, so a combination costs one vector
+ * addition and one evaluation of the cost function. The first levels of the
+ * search are split into fork-join tasks.
+ * <p>
+ * For the variance, the standard deviation and the squared distance
+ * ({@link VarCostFunction}, {@link StdDevCostFunction},
+ * {@link SqrDistCostFunction}) the search is a branch-and-bound. These costs
+ * are convex quadratic functions scale * |g|^2 of the global response, with g
+ * the centered response or the response minus the target. Each node of the
+ * search represents the sum of its selected plans and of the mean plans of
+ * the remaining agents; the remaining agents add the deviations of their
+ * plans from their mean plan. Two lower bounds prune the subtree of a node:
+ * <ul>
+ * <li>the tangent of the cost at the node plus, for each remaining agent, the
+ * smallest product of the gradient with one of its deviations</li>
+ * <li>the triangle inequality: the norm of g cannot shrink by more than the
+ * sum of the largest deviations of the remaining agents</li>
+ * </ul>
+ * A node carries |g|^2 and the products of g with the deviations. With the
+ * products of the deviations among each other computed in advance, they are
+ * updated incrementally from parent to child, so the bounds and the costs of
+ * complete combinations are computed without touching the vectors; only the
+ * combinations that may improve on the best cost are evaluated with the cost
+ * function. Agents are searched in the order of decreasing deviation and the
+ * plans of an agent in the order of increasing bound, so good combinations
+ * are found early. Other cost functions are enumerated without pruning.
+ * <p>
+ * If several combinations have the minimal cost, the one with the smallest
+ * selections in the search order is returned, independently of the
+ * parallelism.
+ *
+ * @author Peter
+ */
+public class BruteForceOptimizer {
+
+    private enum Bound {
+        NONE, VARIANCE, STD, SQR_DIST
+    }
+
+    private static final double TASKS_PER_THREAD = 16;
+    private static final int MAX_BOUNDED_PLANS = 4096; // the products take 8 * n^2 bytes
+
+    private final CostFunction<Vector> costFunction;
+    private final ForkJoinPool pool;
+    private boolean pruning = true;
+
+    /**
+     * Creates an optimizer that runs in the common fork-join pool.
+     *
+     * @param costFunction the global cost function
+     */
+    public BruteForceOptimizer(CostFunction<Vector> costFunction) {
+        this(costFunction, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param costFunction the global cost function
+     * @param pool the pool that runs the search
+     */
+    public BruteForceOptimizer(CostFunction<Vector> costFunction, ForkJoinPool pool) {
+        this.costFunction = costFunction;
+        this.pool = pool;
+    }
+
+    /**
+     * Switches branch-and-bound pruning on or off. Pruning is on by default;
+     * without pruning, all combinations are evaluated.
+     *
+     * @param pruning true, if subtrees should be pruned
+     */
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * @param dataset the dataset
+     * @param numAgents the number of agents, starting with agent 0
+     * @return the optimal combination
+     */
+    public Solution optimize(Dataset<Vector> dataset, int numAgents) {
+        List<List<Plan<Vector>>> plansPerAgent = new ArrayList<>();
+        for (int i = 0; i < numAgents; i++) {
+            plansPerAgent.add(dataset.getPlans(i));
+        }
+        return optimize(plansPerAgent);
+    }
+
+    /**
+     * @param plansPerAgent the possible plans of each agent
+     * @return the optimal combination
+     */
+    public Solution optimize(List<List<Plan<Vector>>> plansPerAgent) {
+        if (plansPerAgent.isEmpty()) {
+            throw new IllegalArgumentException("no agents");
+        }
+        for (List<Plan<Vector>> plans : plansPerAgent) {
+            if (plans.isEmpty()) {
+                throw new IllegalArgumentException("agent without plans");
+            }
+        }
+        Search search = new Search(plansPerAgent);
+        Best best = pool.invoke(search.new Task(0, search.zero(), new int[search.n]));
+
+        int[] selections = new int[search.n];
+        Vector globalResponse = search.zero();
+        for (int k = 0; k < search.n; k++) {
+            selections[search.order[k]] = best.selections[k];
+            globalResponse.add(search.plans[k][best.selections[k]]);
+        }
+        return new Solution(selections, best.cost, globalResponse, search.evaluated.sum(), search.pruned.sum());
+    }
+
+    private Bound getBound(int numPlans) {
+        if (!pruning || numPlans > MAX_BOUNDED_PLANS) {
+            return Bound.NONE;
+        } else if (costFunction.getClass() == VarCostFunction.class) {
+            return Bound.VARIANCE;
+        } else if (costFunction.getClass() == StdDevCostFunction.class) {
+            return Bound.STD;
+        } else if (costFunction.getClass() == SqrDistCostFunction.class) {
+            return Bound.SQR_DIST;
+        }
+        return Bound.NONE;
+    }
+
+    /**
+     * The shared state of one optimization. The agents are stored in search
+     * order; the plans of all agents are numbered consecutively, starting
+     * with offset[k] for agent k.
+     */
+    private class Search {
+
+        final int n;
+        final int[] order;
+        final Vector[][] plans;
+        final int[] offset;
+        final Bound bound;
+        final double scale;
+        final Vector target;
+        final Vector[] centroidSuffix; // sum of the mean plans of agents k..n-1
+        final double[] radiusSuffix; // sum of the largest deviations of agents k..n-1
+        final Vector[] deviations; // plans minus mean plan, centered unless SQR_DIST
+        final double[][] products; // products of the deviations
+        final int splitDepth;
+        final DoubleAccumulator bestCost = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        final LongAdder evaluated = new LongAdder();
+        final LongAdder pruned = new LongAdder();
+
+        Search(List<List<Plan<Vector>>> plansPerAgent) {
+            n = plansPerAgent.size();
+            int numPlans = plansPerAgent.stream().mapToInt(List::size).sum();
+            bound = getBound(numPlans);
+            int numDimensions = plansPerAgent.get(0).get(0).getValue().getNumDimensions();
+            scale = bound == Bound.SQR_DIST ? 1 : 1.0 / (numDimensions - 1);
+            target = bound == Bound.SQR_DIST ? ((SqrDistCostFunction) costFunction).getTarget() : null;
+
+            Vector[] centroids = new Vector[n];
+            double[] radii = new double[n];
+            for (int i = 0; i < n; i++) {
+                List<Plan<Vector>> agentPlans = plansPerAgent.get(i);
+                centroids[i] = agentPlans.get(0).getValue().cloneNew();
+                for (Plan<Vector> plan : agentPlans) {
+                    centroids[i].add(plan.getValue());
+                }
+                centroids[i].multiply(1.0 / agentPlans.size());
+                if (bound != Bound.NONE) {
+                    for (Plan<Vector> plan : agentPlans) {
+                        Vector deviation = deviation(plan.getValue(), centroids[i]);
+                        radii[i] = Math.max(radii[i], Math.sqrt(scale * deviation.normSqr()));
+                    }
+                }
+            }
+            order = IntStream.range(0, n).boxed()
+                    .sorted(Comparator.comparingDouble((Integer i) -> -radii[i]))
+                    .mapToInt(i -> i).toArray();
+
+            plans = new Vector[n][];
+            offset = new int[n + 1];
+            deviations = new Vector[numPlans];
+            for (int k = 0; k < n; k++) {
+                List<Plan<Vector>> agentPlans = plansPerAgent.get(order[k]);
+                plans[k] = new Vector[agentPlans.size()];
+                for (int p = 0; p < plans[k].length; p++) {
+                    plans[k][p] = agentPlans.get(p).getValue();
+                    deviations[offset[k] + p] = deviation(plans[k][p], centroids[order[k]]);
+                }
+                offset[k + 1] = offset[k] + plans[k].length;
+            }
+
+            centroidSuffix = new Vector[n + 1];
+            radiusSuffix = new double[n + 1];
+            centroidSuffix[n] = centroids[0].cloneNew();
+            for (int k = n - 1; k >= 0; k--) {
+                centroidSuffix[k] = centroidSuffix[k + 1].cloneThis();
+                centroidSuffix[k].add(centroids[order[k]]);
+                radiusSuffix[k] = radiusSuffix[k + 1] + radii[order[k]];
+            }
+
+            if (bound != Bound.NONE) {
+                products = new double[numPlans][numPlans];
+                for (int a = 0; a < numPlans; a++) {
+                    for (int b = 0; b <= a; b++) {
+                        products[a][b] = products[b][a] = deviations[a].dot(deviations[b]);
+                    }
+                }
+            } else {
+                products = null;
+            }
+
+            int depth = 0;
+            double numTasks = 1;
+            while (depth < n - 1 && numTasks < TASKS_PER_THREAD * pool.getParallelism()) {
+                numTasks *= plans[depth].length;
+                depth++;
+            }
+            splitDepth = depth;
+        }
+
+        Vector zero() {
+            return plans[0][0].cloneNew();
+        }
+
+        private Vector deviation(Vector plan, Vector centroid) {
+            Vector deviation = plan.cloneThis();
+            deviation.subtract(centroid);
+            if (bound != Bound.SQR_DIST) {
+                deviation.subtract(deviation.avg());
+            }
+            return deviation;
+        }
+
+        /**
+         * Computes |g|^2 of the node with the given partial sum and the
+         * products of g with the deviations of the agents depth..n-1.
+         *
+         * @return |g|^2
+         */
+        double initNode(int depth, Vector partial, double[] dots) {
+            Vector g = partial.cloneThis();
+            g.add(centroidSuffix[depth]);
+            if (bound == Bound.SQR_DIST) {
+                g.subtract(target);
+            } else {
+                g.subtract(g.avg());
+            }
+            for (int b = offset[depth]; b < offset[n]; b++) {
+                dots[b] = g.dot(deviations[b]);
+            }
+            return g.normSqr();
+        }
+
+        /**
+         * @param depth the number of selected agents of the node
+         * @param gg |g|^2 of the node
+         * @param dots the products of g with the deviations of the parent
+         * @param a the plan that was selected last, or -1 if dots belong to
+         * the node itself
+         * @return a lower bound of the cost of all combinations below the node,
+         * or 0 if the bound is not a number
+         */
+        double lowerBound(int depth, double gg, double[] dots, int a) {
+            // the incremental updates may round |g|^2 below 0
+            double triangle = Math.max(0, Math.sqrt(scale * Math.max(0, gg)) - radiusSuffix[depth]);
+            double tangent = gg;
+            for (int k = depth; k < n; k++) {
+                double min = Double.POSITIVE_INFINITY;
+                for (int b = offset[k]; b < offset[k + 1]; b++) {
+                    min = Math.min(min, a < 0 ? dots[b] : dots[b] + products[a][b]);
+                }
+                tangent += 2 * min;
+            }
+            double lowerBound = Math.max(triangle * triangle, scale * tangent);
+            if (Double.isNaN(lowerBound)) {
+                // the children are sorted by their bounds, so a NaN must not prune
+                return 0;
+            }
+            return bound == Bound.STD ? Math.sqrt(Math.max(0, lowerBound)) : lowerBound;
+        }
+
+        double costOf(double gg) {
+            double cost = scale * Math.max(0, gg);
+            return bound == Bound.STD ? Math.sqrt(cost) : cost;
+        }
+
+        /**
+         * @param lowerBound a lower bound of the cost of a subtree
+         * @return true, if the subtree cannot improve on the best known cost
+         */
+        boolean exceedsBest(double lowerBound) {
+            // the slack keeps combinations whose cost ties with the best one
+            // and absorbs the rounding errors of the incremental updates
+            double best = bestCost.get();
+            return lowerBound > best + 1e-9 * Math.abs(best) + 1e-12;
+        }
+
+        /**
+         * Searches the subtree below the given selections. The nodes above
+         * the split depth are forked, the nodes below are searched
+         * sequentially.
+         */
+        class Task extends RecursiveTask<Best> {
+
+            final int depth;
+            final Vector partial;
+            final int[] selections;
+
+            Task(int depth, Vector partial, int[] selections) {
+                this.depth = depth;
+                this.partial = partial;
+                this.selections = selections;
+            }
+
+            @Override
+            protected Best compute() {
+                Best best = new Best(n);
+                if (depth >= splitDepth) {
+                    Vector[] sums = new Vector[n];
+                    for (int k = depth; k < n; k++) {
+                        sums[k] = partial.cloneNew();
+                    }
+                    sums[depth].set(partial);
+                    int[] current = Arrays.copyOf(selections, n);
+                    if (bound == Bound.NONE) {
+                        enumerate(depth, sums, current, partial.cloneNew(), best);
+                    } else {
+                        double[][] dots = new double[n][offset[n]];
+                        double gg = initNode(depth, partial, dots[depth]);
+                        if (depth > 0 && exceedsBest(lowerBound(depth, gg, dots[depth], -1))) {
+                            pruned.increment();
+                        } else {
+                            search(depth, sums, gg, dots, current, partial.cloneNew(), best);
+                        }
+                    }
+                    return best;
+                }
+
+                List<Task> tasks = new ArrayList<>();
+                for (int i = 0; i < plans[depth].length; i++) {
+                    Vector next = partial.cloneThis();
+                    next.add(plans[depth][i]);
+                    int[] nextSelections = Arrays.copyOf(selections, n);
+                    nextSelections[depth] = i;
+                    tasks.add(new Task(depth + 1, next, nextSelections));
+                }
+                for (Task task : invokeAll(tasks)) {
+                    best.merge(task.join());
+                }
+                return best;
+            }
+
+            /**
+             * Evaluates all combinations below the node.
+             */
+            private void enumerate(int depth, Vector[] sums, int[] current, Vector buffer, Best best) {
+                Vector[] choices = plans[depth];
+                for (int i = 0; i < choices.length; i++) {
+                    current[depth] = i;
+                    if (depth == n - 1) {
+                        buffer.set(sums[depth]);
+                        buffer.add(choices[i]);
+                        best.offer(costFunction.calcCost(buffer), current);
+                    } else {
+                        sums[depth + 1].set(sums[depth]);
+                        sums[depth + 1].add(choices[i]);
+                        enumerate(depth + 1, sums, current, buffer, best);
+                    }
+                }
+                if (depth == n - 1) {
+                    evaluated.add(choices.length);
+                }
+            }
+
+            /**
+             * Visits the children in the order of increasing lower bounds, so
+             * good combinations are found early, and stops at the first child
+             * whose bound exceeds the best known cost.
+             */
+            private void search(int depth, Vector[] sums, double gg, double[][] dots, int[] current, Vector buffer, Best best) {
+                Vector[] choices = plans[depth];
+                double[] nodeDots = dots[depth];
+                if (depth == n - 1) {
+                    for (int i = 0; i < choices.length; i++) {
+                        int a = offset[depth] + i;
+                        if (!exceedsBest(costOf(gg + 2 * nodeDots[a] + products[a][a]))) {
+                            buffer.set(sums[depth]);
+                            buffer.add(choices[i]);
+                            current[depth] = i;
+                            best.offer(costFunction.calcCost(buffer), current);
+                            bestCost.accumulate(best.cost);
+                        }
+                    }
+                    evaluated.add(choices.length);
+                    return;
+                }
+
+                int[] visitOrder = new int[choices.length];
+                double[] childGg = new double[choices.length];
+                double[] bounds = new double[choices.length];
+                for (int i = 0; i < choices.length; i++) {
+                    int a = offset[depth] + i;
+                    childGg[i] = gg + 2 * nodeDots[a] + products[a][a];
+                    bounds[i] = lowerBound(depth + 1, childGg[i], nodeDots, a);
+                    // insertion sort; the number of plans is small in searches
+                    // that can be enumerated
+                    int j = i;
+                    while (j > 0 && bounds[visitOrder[j - 1]] > bounds[i]) {
+                        visitOrder[j] = visitOrder[j - 1];
+                        j--;
+                    }
+                    visitOrder[j] = i;
+                }
+                double[] childDots = dots[depth + 1];
+                for (int j = 0; j < choices.length; j++) {
+                    int i = visitOrder[j];
+                    if (exceedsBest(bounds[i])) {
+                        pruned.add(choices.length - j);
+                        return;
+                    }
+                    double[] row = products[offset[depth] + i];
+                    for (int b = offset[depth + 1]; b < offset[n]; b++) {
+                        childDots[b] = nodeDots[b] + row[b];
+                    }
+                    sums[depth + 1].set(sums[depth]);
+                    sums[depth + 1].add(choices[i]);
+                    current[depth] = i;
+                    search(depth + 1, sums, childGg[i], dots, current, buffer, best);
+                }
+            }
+        }
+    }
+
+    /**
+     * The best combination found in a subtree.
+     */
+    private static class Best {
+
+        double cost = Double.POSITIVE_INFINITY;
+        final int[] selections;
+
+        Best(int n) {
+            selections = new int[n];
+        }
+
+        /**
+         * Takes the given combination if it is better, or if it has the same
+         * cost and smaller selections in search order; so the result does not
+         * depend on the order in which the combinations are visited.
+         */
+        void offer(double cost, int[] selections) {
+            if (cost < this.cost || (cost == this.cost && compare(selections, this.selections) < 0)) {
+                this.cost = cost;
+                System.arraycopy(selections, 0, this.selections, 0, selections.length);
+            }
+        }
+
+        void merge(Best other) {
+            if (other.cost != Double.POSITIVE_INFINITY) {
+                offer(other.cost, other.selections);
+            }
+        }
+
+        private static int compare(int[] a, int[] b) {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return Integer.compare(a[i], b[i]);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * An optimal combination of plans.
+     */
+    public static class Solution {
+
+        private final int[] selections;
+        private final double cost;
+        private final Vector globalResponse;
+        private final long numEvaluated;
+        private final long numPruned;
+
+        Solution(int[] selections, double cost, Vector globalResponse, long numEvaluated, long numPruned) {
+            this.selections = selections;
+            this.cost = cost;
+            this.globalResponse = globalResponse;
+            this.numEvaluated = numEvaluated;
+            this.numPruned = numPruned;
+        }
+
+        /**
+         * @return the selected plan index of each agent
+         */
+        public int[] getSelections() {
+            return selections.clone();
+        }
+
+        /**
+         * @return the global cost of the combination
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        /**
+         * @return the sum of the selected plans
+         */
+        public Vector getGlobalResponse() {
+            return globalResponse.cloneThis();
+        }
+
+        /**
+         * @return the number of combinations that were enumerated
+         */
+        public long getNumEvaluated() {
+            return numEvaluated;
+        }
+
+        /**
+         * @return the number of pruned subtrees
+         */
+        public long getNumPruned() {
+            return numPruned;
+        }
+    }
+}
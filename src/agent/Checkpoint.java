@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * A snapshot of the state of all agents of a simulation and of the log, taken
+ * between two iterations. Agents that are restored from a checkpoint continue
+ * with the next iteration when their phase starts and produce the same
+ * results as the run that wrote the checkpoint.
+ * <p>
+ * The state of an agent contains its selections, aggregates, subtree
+ * responses, iteration counter and RNG state, and the state its loggers keep
+ * between iterations (see {@link agent.logging.AgentLogger#writeState}). All
+ * loggers in agent.logging support checkpoints; other loggers that keep state
+ * between iterations have to override writeState and readState. The agents
+ * have to be resumed with the same loggers. Plans are stored as positions in
+ * the possible plans and vectors as raw doubles; the configuration and the
+ * possible plans of the agents are not stored, but set up again when the
+ * agents are created. Checkpoints are only consistent for timer-driven
+ * iterations, where no messages are in transit between two iterations.
+ *
+ * @author Peter
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x45504f53; // "EPOS"
+    private static final int VERSION = 2; // version 1 has no logger states
+
+    private final int iteration;
+    private final MeasurementLog log;
+    private final Map<Integer, byte[]> states;
+
+    private Checkpoint(int iteration, MeasurementLog log, Map<Integer, byte[]> states) {
+        this.iteration = iteration;
+        this.log = log;
+        this.states = states;
+    }
+
+    /**
+     * Writes a checkpoint. The file is replaced atomically, so a crash while
+     * writing leaves the previous checkpoint intact.
+     *
+     * @param file the checkpoint file
+     * @param agents the agents; the position in the list is the agent id
+     * @param log the log of the run so far, may be null
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public static void write(File file, List<? extends IeposAgent<?>> agents, MeasurementLog log) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(agents.isEmpty() ? -1 : agents.get(0).getIteration());
+            writeBytes(out, log == null ? null : serialize(log));
+            out.writeInt(agents.size());
+            for (int i = 0; i < agents.size(); i++) {
+                IeposAgent<?> agent = agents.get(i);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                synchronized (agent) {
+                    try (ObjectOutputStream state = new ObjectOutputStream(bytes)) {
+                        agent.writeState(state);
+                    }
+                }
+                out.writeInt(i);
+                writeBytes(out, bytes.toByteArray());
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint.
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Checkpoint read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a checkpoint: " + file);
+            }
+            int iteration = in.readInt();
+            byte[] logBytes = readBytes(in);
+            MeasurementLog log = null;
+            if (logBytes != null) {
+                try (ObjectInputStream logIn = new ObjectInputStream(new ByteArrayInputStream(logBytes))) {
+                    log = (MeasurementLog) logIn.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException(ex);
+                }
+            }
+            Map<Integer, byte[]> states = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                int agentId = in.readInt();
+                states.put(agentId, readBytes(in));
+            }
+            return new Checkpoint(iteration, log, states);
+        }
+    }
+
+    /**
+     * @return the last iteration that was completed when the checkpoint was
+     * taken
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * @return the log of the run up to the checkpoint, or null
+     */
+    public MeasurementLog getLog() {
+        return log;
+    }
+
+    /**
+     * Lets the given agent continue from its state in this checkpoint. Must be
+     * called before the agent starts.
+     *
+     * @param agent the newly created agent
+     * @param agentId the id of the agent
+     */
+    public void restore(IeposAgent<?> agent, int agentId) {
+        byte[] state = states.get(agentId);
+        if (state == null) {
+            throw new IllegalArgumentException("no state for agent " + agentId);
+        }
+        agent.resumeFrom(state);
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -22,15 +22,13 @@ import data.Plan;
 import func.CostFunction;
 import func.PlanCostFunction;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import protopeer.Finger;
 import protopeer.network.Message;
-import protopeer.network.NetworkAddress;
 import protopeer.time.Timer;
 import protopeer.util.quantities.Time;
 import data.DataType;
+import util.PersistentIntMap;
 
 /**
  * This agent performs the COHDA algorithm for combinatorial optimization.
@@ -185,6 +183,7 @@ public class CohdaAgent<V extends DataType<V>> extends TreeAgent<V> {
             selectedPlan = current.getLocal(this);
         }
         this.selectedPlan = selectedPlan;
+        this.selectedPlanIdx = selected;
         current.updateLocal(this,selectedPlan);
 
         if (betterThanBest(current)) {
@@ -215,9 +214,14 @@ public class CohdaAgent<V extends DataType<V>> extends TreeAgent<V> {
         }
     }
 
+    /**
+     * The weights known to an agent, keyed by peer index. The weights are
+     * stored in a persistent map, so copying a knowledge base is O(1) and
+     * copies share all unmodified entries.
+     */
     private static class KnowledgeBase<V extends DataType<V>> {
 
-        private Map<NetworkAddress, Weight<V>> weights = new HashMap<>();
+        private PersistentIntMap<Weight<V>> weights = PersistentIntMap.empty();
         private V global;
 
         public KnowledgeBase() {
@@ -228,31 +232,23 @@ public class CohdaAgent<V extends DataType<V>> extends TreeAgent<V> {
         }
 
         public void set(KnowledgeBase<V> newKb) {
-            weights.clear();
-            weights.putAll(newKb.weights);
+            weights = newKb.weights;
             global = newKb.global;
         }
 
         public boolean updateWith(KnowledgeBase<V> other) {
-            boolean changed = false;
             global = null;
 
-            for (NetworkAddress agent : other.weights.keySet()) {
-                Weight weight = weights.get(agent);
-                Weight otherWeight = other.weights.get(agent);
-
-                if (weight == null || weight.age < otherWeight.age) {
-                    weights.put(agent, otherWeight);
-                    changed = true;
-                }
-            }
+            PersistentIntMap<Weight<V>> merged = weights.merge(other.weights, (weight, otherWeight) -> weight.age < otherWeight.age ? otherWeight : weight);
+            boolean changed = merged != weights;
+            weights = merged;
 
             return changed;
         }
 
         public void updateLocal(CohdaAgent agent, Plan<V> newPlan) {
             global = null;
-            NetworkAddress key = agent.getPeer().getNetworkAddress();
+            int key = agent.getPeer().getIndexNumber();
 
             Weight<V> prevWeight = weights.get(key);
 
@@ -262,11 +258,11 @@ public class CohdaAgent<V extends DataType<V>> extends TreeAgent<V> {
             }
             newWeight.weight = newPlan;
 
-            weights.put(key, newWeight);
+            weights = weights.with(key, newWeight);
         }
 
         public Plan<V> getLocal(CohdaAgent agent) {
-            Weight<V> weight = weights.get(agent.getPeer().getNetworkAddress());
+            Weight<V> weight = weights.get(agent.getPeer().getIndexNumber());
             if (weight != null) {
                 return weight.weight;
             } else {
@@ -276,9 +272,10 @@ public class CohdaAgent<V extends DataType<V>> extends TreeAgent<V> {
 
         public V global() {
             if (global == null) {
-                V newVal = weights.values().iterator().next().weight.getValue().cloneNew();
-                global = weights.values().stream()
-                        .map(x -> x.weight.getValue())
+                List<V> values = new ArrayList<>(weights.size());
+                weights.forEach((key, weight) -> values.add(weight.weight.getValue()));
+                V newVal = values.get(0).cloneNew();
+                global = values.stream()
                         .reduce(newVal, (x, y) -> {
                             x.add(y);
                             return x;
@@ -288,13 +285,13 @@ public class CohdaAgent<V extends DataType<V>> extends TreeAgent<V> {
         }
 
         public V aggregate(CohdaAgent<V> agent) {
-            V aggregate = weights.entrySet().stream()
-                    .filter(x -> !agent.getPeer().getNetworkAddress().equals(x.getKey()))
-                    .map(x -> x.getValue().weight.getValue())
-                    .reduce(agent.createValue(), (x, y) -> {
-                        x.add(y);
-                        return x;
-                    });
+            int self = agent.getPeer().getIndexNumber();
+            V aggregate = agent.createValue();
+            weights.forEach((key, weight) -> {
+                if (key != self) {
+                    aggregate.add(weight.weight.getValue());
+                }
+            });
             return aggregate;
         }
 
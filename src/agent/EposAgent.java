@@ -70,7 +70,7 @@ public class EposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Epos
     EposDown<V> atRoot(EposUp<V> rootMsg) {
         int selection = optimization.argmin(globalCostFunc, possibleValues, aggregatedResponse);
         numComputed += possiblePlans.size();
-        selectedPlan = possiblePlans.get(selection);
+        setSelectedPlan(selection);
 
         globalResponse = aggregatedResponse.cloneThis();
         globalResponse.add(selectedPlan.getValue());
@@ -81,7 +81,7 @@ public class EposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Epos
     @Override
     List<EposDown<V>> down(EposDown<V> parentMsg) {
         globalResponse = parentMsg.globalResponse;
-        selectedPlan = possiblePlans.get(parentMsg.selection);
+        setSelectedPlan(parentMsg.selection);
 
         List<EposDown<V>> msgs = new ArrayList<>();
         for (Integer childSelection : childSelections) {
@@ -104,6 +104,11 @@ public class EposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Epos
         public int getNumTransmitted() {
             return 1 + possiblePlans.size();
         }
+
+        @Override
+        public int getNumBytes() {
+            return MessageCodec.sizeOf(aggregatedResponse) + possiblePlans.stream().mapToInt(MessageCodec::sizeOf).sum();
+        }
     }
 
     static class EposDown<V> extends DownMessage {
@@ -121,5 +126,10 @@ public class EposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Epos
             return 0; // top-down-phase not necessary to find a solution
         }
 
+        @Override
+        public int getNumBytes() {
+            return 0;
+        }
+
     }
 }
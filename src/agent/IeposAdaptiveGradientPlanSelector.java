@@ -38,7 +38,7 @@ public class IeposAdaptiveGradientPlanSelector implements PlanSelector<IeposAgen
             Vector gradient = gradientFunction.calcGradient(otherResponse);
             costFunc.setCostVector(gradient);
 
-            return agent.optimization.argmin(costFunc, agent.possiblePlans, agent.lambda);
+            return agent.optimization.argmin(costFunc, agent.possiblePlans, null, agent.lambda, agent.localRanks);
         }
     }
 
@@ -8,11 +8,17 @@ package agent;
 import data.Plan;
 import func.CostFunction;
 import func.PlanCostFunction;
+import agent.jfr.EventRecorder;
 import agent.logging.AgentLoggingProvider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import data.DataType;
+import data.Vector;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import util.Profiler;
 
 /**
  * This agent performs the I-EPOS algorithm for combinatorial optimization.
@@ -20,22 +26,40 @@ import data.DataType;
  * @author Peter
  * @param <V> the type of the data this agent should handle
  */
-public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, IeposAgent<V>.UpMessage, IeposAgent<V>.DownMessage> {
+public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, IeposAgent.UpMessage<V>, IeposAgent.DownMessage<V>> {
 
     // agent info
     Plan<V> prevSelectedPlan;
+    private int prevSelectedPlanIdx = -1;
     V aggregatedResponse;
     V prevAggregatedResponse;
 
     // per child info
-    private final List<V> subtreeResponses = new ArrayList<>();
-    private final List<V> prevSubtreeResponses = new ArrayList<>();
+    private List<V> subtreeResponses = new ArrayList<>();
+    private List<V> prevSubtreeResponses = new ArrayList<>();
     private final List<Boolean> approvals = new ArrayList<>();
 
     // misc
     Optimization optimization;
     double lambda; // parameter for lambda-PREF local cost minimization
     private PlanSelector<IeposAgent<V>, V> planSelector;
+    private int initialPlan = -1; // plan index for a warm start
+
+    // preallocated buffers for buffer recycling
+    private boolean recycleBuffers;
+    private UpMessage<V> upMsg;
+    private DownMessage<V> rootMsg;
+    private final List<DownMessage<V>> downMsgs = new ArrayList<>();
+    private final List<V> combinations = new ArrayList<>();
+    private V othersResponse;
+
+    // references for delta coding; every child receives the same global response
+    private boolean deltaEncoding;
+    private boolean useDelta;
+    private Vector sentUp;
+    private Vector sentDown;
+    private Vector receivedDown;
+    private final List<Vector> receivedUp = new ArrayList<>();
 
     /**
      * Creates a new IeposAgent. Using the same RNG seed will result in the same
@@ -56,6 +80,27 @@ public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Iep
         this.planSelector = new IeposPlanSelector<>();
     }
 
+    /**
+     * Creates a new IeposAgent with the plans of another agent, e.g. the same
+     * agent in another variant of an experiment. The plans, ordered by local
+     * cost, and their local costs and ranks are shared with the other agent
+     * instead of being computed again; the local cost function is the one of
+     * the other agent.
+     *
+     * @param numIterations the number of iterations
+     * @param planSource the agent whose plans this agent can choose from
+     * @param globalCostFunc the global cost function
+     * @param loggingProvider the object that extracts data from the agent and
+     * writes it into its log.
+     * @param seed a seed for the RNG
+     */
+    public IeposAgent(int numIterations, Agent<V> planSource, CostFunction<V> globalCostFunc, AgentLoggingProvider<? extends IeposAgent<V>> loggingProvider, long seed) {
+        super(numIterations, planSource, globalCostFunc, loggingProvider, seed);
+        this.optimization = new Optimization(random);
+        this.lambda = 0;
+        this.planSelector = new IeposPlanSelector<>();
+    }
+
     /**
      * Sets lambda, the traidoff between global and local cost minimization. A
      * value of 0 indicates pure global cost minimization, while a value of 1
@@ -67,6 +112,13 @@ public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Iep
         this.lambda = lambda;
     }
 
+    /**
+     * @return traidoff between global and local cost minimization
+     */
+    public double getLambda() {
+        return lambda;
+    }
+
     /**
      * An I-EPOS agent can have different strategies for plan selection. The
      * plan selector decides which plan to select given the current state of the
@@ -78,50 +130,242 @@ public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Iep
         this.planSelector = planSelector;
     }
 
+    /**
+     * Enables or disables buffer recycling. If enabled, the payload vectors of
+     * the up and down messages as well as the per child responses are
+     * allocated once per phase and overwritten in place in every iteration.
+     * <p>
+     * The payload of a sent message is owned by the sender and is only valid
+     * until the sender's next iteration. A receiver never keeps a reference
+     * to it, but copies it into its own buffers as soon as the message is
+     * processed. This holds in simulations, where messages are delivered by
+     * reference, as well as in live runs, where they are serialized.
+     *
+     * @param recycleBuffers true, if the buffers should be reused
+     */
+    public void setRecycleBuffers(boolean recycleBuffers) {
+        this.recycleBuffers = recycleBuffers;
+    }
+
+    /**
+     * Enables or disables delta coding of the responses. If enabled, the
+     * response vectors in the messages are coded relative to the previous
+     * vector sent over the same link (see {@link MessageCodec#encodeDelta}).
+     * The first message of every phase carries the full vector. Only applies
+     * if the data type is {@link Vector}.
+     *
+     * @param deltaEncoding true, if the responses should be delta coded
+     */
+    public void setDeltaEncoding(boolean deltaEncoding) {
+        this.deltaEncoding = deltaEncoding;
+    }
+
+    /**
+     * Sets the plan this agent selects in the first iteration instead of
+     * selecting a plan greedily. Starting all agents from the selections of a
+     * previous run (a warm start) continues the optimization where that run
+     * stopped. If no plan with the given index exists, e.g. because the
+     * plans changed, the agent starts greedily.
+     *
+     * @param planIndex the index of the plan (see {@link Plan#getIndex()}),
+     * or -1 for a greedy start
+     */
+    public void setInitialPlan(int planIndex) {
+        this.initialPlan = planIndex;
+    }
+
+    /**
+     * Enables or disables incremental re-optimization. If enabled, each phase
+     * after the first one continues from the solution of the previous phase.
+     * Only the agents whose plans changed in between (see
+     * {@link #changePlans(List)}) and their ancestors take part; the other
+     * agents keep their selections and their parents reuse the cached subtree
+     * responses. The work and the number of messages of such a phase thus
+     * depend on the number and depth of the changed agents, not on the size
+     * of the network. The root always takes part, so that the logged global
+     * cost is up to date.
+     * <p>
+     * Incremental phases apply to timer-driven iterations; an incremental
+     * phase uses its first second to activate the ancestors of the changed
+     * agents. All agents of the network have to use the same setting.
+     *
+     * @param incremental true, if phases should only re-optimize changes
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Replaces the plans of this agent between two phases. In incremental
+     * mode, this agent and its ancestors re-optimize in the next phase.
+     *
+     * @param possiblePlans the new plans of this agent
+     */
+    public synchronized void changePlans(List<Plan<V>> possiblePlans) {
+        setPossiblePlans(possiblePlans);
+        markChanged();
+    }
+
+    /**
+     * @return true, if this agent starts from a given plan
+     */
+    public boolean isWarmStart() {
+        return initialPlan >= 0;
+    }
+
     public V getGlobalResponse() {
         return globalResponse.cloneThis();
     }
 
     @Override
     void initPhase() {
+        if (isIncrementalPhase()) {
+            // keep the solution and the cached subtree responses; the delta
+            // references are not maintained for inactive children
+            useDelta = false;
+            return;
+        }
         aggregatedResponse = createValue();
         prevAggregatedResponse = createValue();
         globalResponse = createValue();
         prevSelectedPlan = createPlan();
+
+        subtreeResponses.clear();
+        prevSubtreeResponses.clear();
+        approvals.clear();
+        downMsgs.clear();
+        combinations.clear();
+        if (recycleBuffers) {
+            for (int i = 0; i < children.size(); i++) {
+                subtreeResponses.add(createValue());
+                prevSubtreeResponses.add(createValue());
+                downMsgs.add(new DownMessage<>(globalResponse, true));
+            }
+            upMsg = new UpMessage<>(createValue());
+            rootMsg = new DownMessage<>(globalResponse, true);
+            othersResponse = createValue();
+        }
+
+        useDelta = deltaEncoding && createValue() instanceof Vector;
+        sentUp = null;
+        sentDown = null;
+        receivedDown = null;
+        receivedUp.clear();
+        for (int i = 0; i < children.size(); i++) {
+            receivedUp.add(null);
+        }
+    }
+
+    @Override
+    void writeState(ObjectOutputStream out) throws IOException {
+        super.writeState(out);
+        writePlan(out, prevSelectedPlan);
+        MessageCodec.writeValue(out, aggregatedResponse, MessageCodec.Encoding.FLOAT64);
+        MessageCodec.writeValue(out, prevAggregatedResponse, MessageCodec.Encoding.FLOAT64);
+        writeValues(out, subtreeResponses);
+        writeValues(out, prevSubtreeResponses);
+        MessageCodec.writeValue(out, sentUp, MessageCodec.Encoding.FLOAT64);
+        MessageCodec.writeValue(out, sentDown, MessageCodec.Encoding.FLOAT64);
+        MessageCodec.writeValue(out, receivedDown, MessageCodec.Encoding.FLOAT64);
+        writeValues(out, receivedUp);
+    }
+
+    @Override
+    void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        super.readState(in);
+        optimization = new Optimization(random);
+        prevSelectedPlan = readPlan(in);
+        prevSelectedPlanIdx = positionOf(prevSelectedPlan);
+        aggregatedResponse = readValue(in, aggregatedResponse);
+        prevAggregatedResponse = readValue(in, prevAggregatedResponse);
+        readValues(in, subtreeResponses);
+        readValues(in, prevSubtreeResponses);
+        sentUp = MessageCodec.readValue(in);
+        sentDown = MessageCodec.readValue(in);
+        receivedDown = MessageCodec.readValue(in);
+        readValues(in, receivedUp);
+        if (isIncrementalPhase()) {
+            useDelta = false;
+        }
+    }
+
+    private void writeValues(ObjectOutputStream out, List<? extends DataType> values) throws IOException {
+        out.writeInt(values.size());
+        for (DataType value : values) {
+            MessageCodec.writeValue(out, value, MessageCodec.Encoding.FLOAT64);
+        }
+    }
+
+    // preallocated buffers are overwritten in place
+    private <T extends DataType<T>> void readValues(ObjectInputStream in, List<T> values) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        boolean inPlace = values.size() == size && recycleBuffers;
+        if (!inPlace) {
+            values.clear();
+        }
+        for (int i = 0; i < size; i++) {
+            T value = MessageCodec.readValue(in);
+            if (inPlace && value != null && values.get(i) != null) {
+                values.get(i).set(value);
+            } else if (inPlace) {
+                values.set(i, value);
+            } else {
+                values.add(value);
+            }
+        }
     }
 
     @Override
     void initIteration() {
-        if (iteration > 0) {
+        if (iteration > 0 || isIncrementalPhase()) {
             prevSelectedPlan = selectedPlan;
+            prevSelectedPlanIdx = selectedPlanIdx;
             prevAggregatedResponse.set(aggregatedResponse);
-            prevSubtreeResponses.clear();
-            prevSubtreeResponses.addAll(subtreeResponses);
+            if (recycleBuffers) {
+                List<V> tmp = prevSubtreeResponses;
+                prevSubtreeResponses = subtreeResponses;
+                subtreeResponses = tmp;
+            } else {
+                prevSubtreeResponses.clear();
+                prevSubtreeResponses.addAll(subtreeResponses);
+                subtreeResponses.clear();
+            }
 
             selectedPlan = null;
             aggregatedResponse.reset();
-            subtreeResponses.clear();
             approvals.clear();
         }
     }
 
     @Override
-    UpMessage up(List<UpMessage> childMsgs) {
-        for (UpMessage msg : childMsgs) {
-            subtreeResponses.add(msg.subtreeResponse);
+    UpMessage<V> up(List<UpMessage<V>> childMsgs) {
+        for (int i = 0; i < childMsgs.size(); i++) {
+            // an inactive child keeps its previous subtree response
+            V subtreeResponse = childMsgs.get(i) == null ? prevSubtreeResponses.get(i) : receive(childMsgs.get(i), i);
+            if (recycleBuffers) {
+                subtreeResponses.get(i).set(subtreeResponse);
+            } else {
+                subtreeResponses.add(subtreeResponse);
+            }
         }
+        long start = Profiler.start();
         aggregate();
+        Profiler.stop(Profiler.Phase.AGGREGATE, start);
         selectPlan();
         return informParent();
     }
 
     @Override
-    DownMessage atRoot(UpMessage rootMsg) {
-        return new DownMessage(rootMsg.subtreeResponse, true);
+    DownMessage<V> atRoot(UpMessage<V> rootMsg) {
+        if (recycleBuffers) {
+            this.rootMsg.globalResponse = rootMsg.subtreeResponse;
+            return this.rootMsg;
+        }
+        return new DownMessage<>(rootMsg.subtreeResponse, true);
     }
 
     @Override
-    List<DownMessage> down(DownMessage parentMsg) {
+    List<DownMessage<V>> down(DownMessage<V> parentMsg) {
         updateGlobalResponse(parentMsg);
         approveOrRejectChanges(parentMsg);
         return informChildren();
@@ -133,72 +377,170 @@ public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Iep
                 approvals.add(true);
             }
         } else if (children.size() > 0) {
+            // only active children can change their subtree response
+            List<Integer> activeSlots = new ArrayList<>();
             List<List<V>> choicesPerAgent = new ArrayList<>();
             for (int i = 0; i < children.size(); i++) {
+                if (!isActiveChild(i)) {
+                    continue;
+                }
+                activeSlots.add(i);
                 List<V> choices = new ArrayList<>();
                 choices.add(prevSubtreeResponses.get(i));
                 choices.add(subtreeResponses.get(i));
                 choicesPerAgent.add(choices);
             }
-            List<V> combinations = optimization.calcAllCombinations(choicesPerAgent);
-
-            V othersResponse = globalResponse.cloneThis();
-            for (V prevSubtreeResponce : prevSubtreeResponses) {
-                othersResponse.subtract(prevSubtreeResponce);
+            List<V> combinations;
+            V othersResponse;
+            if (recycleBuffers) {
+                combinations = optimization.calcAllCombinations(choicesPerAgent, this.combinations);
+                othersResponse = this.othersResponse;
+                othersResponse.set(globalResponse);
+            } else {
+                combinations = optimization.calcAllCombinations(choicesPerAgent);
+                othersResponse = globalResponse.cloneThis();
             }
+            for (int i : activeSlots) {
+                othersResponse.subtract(prevSubtreeResponses.get(i));
+            }
+            Object event = EventRecorder.get().beginApproval();
             int selectedCombination = optimization.argmin(globalCostFunc, combinations, othersResponse);
             numComputed += combinations.size();
 
             List<Integer> selections = optimization.combinationToSelections(selectedCombination, choicesPerAgent);
-            for (int selection : selections) {
-                approvals.add(selection == 1);
+            for (int i = 0; i < children.size(); i++) {
+                approvals.add(true);
+            }
+            for (int j = 0; j < activeSlots.size(); j++) {
+                approvals.set(activeSlots.get(j), selections.get(j) == 1);
+            }
+            if (event != null) {
+                EventRecorder.get().endApproval(event, getPeer().getIndexNumber(), iteration, combinations.size(), selections);
             }
         }
         for (int i = 0; i < children.size(); i++) {
-            V prelSubtreeResponse = approvals.get(i) ? subtreeResponses.get(i) : prevSubtreeResponses.get(i);
-            subtreeResponses.set(i, prelSubtreeResponse);
-            aggregatedResponse.add(prelSubtreeResponse);
+            if (!approvals.get(i)) {
+                if (recycleBuffers) {
+                    subtreeResponses.get(i).set(prevSubtreeResponses.get(i));
+                } else {
+                    subtreeResponses.set(i, prevSubtreeResponses.get(i));
+                }
+            }
+            aggregatedResponse.add(subtreeResponses.get(i));
         }
     }
 
     void selectPlan() {
+        if (iteration == 0 && initialPlan >= 0 && !isIncrementalPhase()) {
+            for (int i = 0; i < possiblePlans.size(); i++) {
+                if (possiblePlans.get(i).getIndex() == initialPlan) {
+                    setSelectedPlan(i);
+                    return;
+                }
+            }
+        }
+        long start = Profiler.start();
+        Object event = EventRecorder.get().beginPlanSelection();
         int selected = planSelector.selectPlan(this);
+        Profiler.stop(Profiler.Phase.SELECT_PLAN, start);
         numComputed += planSelector.getNumComputations(this);
-        selectedPlan = possiblePlans.get(selected);
+        setSelectedPlan(selected);
+        if (event != null) {
+            EventRecorder.get().endPlanSelection(event, getPeer().getIndexNumber(), iteration, selectedPlan.getIndex(), possiblePlans.size());
+        }
     }
 
-    private UpMessage informParent() {
-        V subtreeResponse = aggregatedResponse.cloneThis();
-        subtreeResponse.add(selectedPlan.getValue());
-        return new UpMessage(subtreeResponse);
+    private UpMessage<V> informParent() {
+        UpMessage<V> msg;
+        if (recycleBuffers) {
+            msg = upMsg;
+            msg.subtreeResponse.set(aggregatedResponse);
+            msg.subtreeResponse.add(selectedPlan.getValue());
+        } else {
+            V subtreeResponse = aggregatedResponse.cloneThis();
+            subtreeResponse.add(selectedPlan.getValue());
+            msg = new UpMessage<>(subtreeResponse);
+        }
+        if (useDelta && !isRoot()) {
+            Vector value = (Vector) msg.subtreeResponse;
+            msg.delta = MessageCodec.encodeDelta(value, sentUp);
+            if (sentUp == null) {
+                sentUp = value.cloneThis();
+            }
+        }
+        return msg;
     }
 
-    private void updateGlobalResponse(DownMessage parentMsg) {
-        globalResponse.set(parentMsg.globalResponse);
+    private V receive(UpMessage<V> msg, int child) {
+        if (msg.delta == null) {
+            return msg.subtreeResponse;
+        }
+        Vector value = MessageCodec.decodeDelta(msg.delta, receivedUp.get(child));
+        receivedUp.set(child, value);
+        return recycleBuffers ? (V) (DataType) value : (V) (DataType) value.cloneThis();
+    }
+
+    private void updateGlobalResponse(DownMessage<V> parentMsg) {
+        if (parentMsg.delta != null) {
+            receivedDown = MessageCodec.decodeDelta(parentMsg.delta, receivedDown);
+            globalResponse.set((V) (DataType) receivedDown);
+        } else {
+            globalResponse.set(parentMsg.globalResponse);
+        }
     }
 
-    private void approveOrRejectChanges(DownMessage parentMsg) {
+    private void approveOrRejectChanges(DownMessage<V> parentMsg) {
         if (!parentMsg.approved) {
             selectedPlan = prevSelectedPlan;
+            selectedPlanIdx = prevSelectedPlanIdx;
             aggregatedResponse.set(prevAggregatedResponse);
-            subtreeResponses.clear();
-            subtreeResponses.addAll(prevSubtreeResponses);
+            if (recycleBuffers) {
+                for (int i = 0; i < subtreeResponses.size(); i++) {
+                    subtreeResponses.get(i).set(prevSubtreeResponses.get(i));
+                }
+            } else {
+                subtreeResponses.clear();
+                subtreeResponses.addAll(prevSubtreeResponses);
+            }
             Collections.fill(approvals, false);
         }
     }
 
-    private List<DownMessage> informChildren() {
-        List<DownMessage> msgs = new ArrayList<>();
-        for (int i = 0; i < children.size(); i++) {
-            msgs.add(new DownMessage(globalResponse, approvals.get(i)));
+    private List<DownMessage<V>> informChildren() {
+        byte[] delta = null;
+        if (useDelta && !children.isEmpty()) {
+            Vector value = (Vector) globalResponse;
+            delta = MessageCodec.encodeDelta(value, sentDown);
+            if (sentDown == null) {
+                sentDown = value.cloneThis();
+            }
+        }
+
+        List<DownMessage<V>> msgs;
+        if (recycleBuffers) {
+            msgs = downMsgs;
+            for (int i = 0; i < children.size(); i++) {
+                DownMessage<V> msg = msgs.get(i);
+                msg.globalResponse = globalResponse;
+                msg.approved = approvals.get(i);
+            }
+        } else {
+            msgs = new ArrayList<>();
+            for (int i = 0; i < children.size(); i++) {
+                msgs.add(new DownMessage<>(globalResponse, approvals.get(i)));
+            }
+        }
+        for (DownMessage<V> msg : msgs) {
+            msg.delta = delta;
         }
         return msgs;
     }
 
     // message classes
-    class UpMessage extends IterativeTreeAgent.UpMessage {
+    static class UpMessage<V extends DataType<V>> extends IterativeTreeAgent.UpMessage {
 
-        public V subtreeResponse;
+        public transient V subtreeResponse;
+        public transient byte[] delta; // replaces the response if not null
 
         public UpMessage(V subtreeResponse) {
             this.subtreeResponse = subtreeResponse;
@@ -208,12 +550,30 @@ public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Iep
         public int getNumTransmitted() {
             return 1;
         }
+
+        @Override
+        public int getNumBytes() {
+            return delta != null ? delta.length : MessageCodec.sizeOf(subtreeResponse);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            MessageCodec.writeValue(out, delta == null ? subtreeResponse : null);
+            MessageCodec.writeBytes(out, delta);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            subtreeResponse = MessageCodec.readValue(in);
+            delta = MessageCodec.readBytes(in);
+        }
     }
 
-    class DownMessage extends IterativeTreeAgent.DownMessage {
+    static class DownMessage<V extends DataType<V>> extends IterativeTreeAgent.DownMessage {
 
-        public V globalResponse;
-        public boolean approved;
+        public transient V globalResponse;
+        public transient boolean approved;
+        public transient byte[] delta; // replaces the response if not null
 
         public DownMessage(V globalResponse, boolean approved) {
             this.globalResponse = globalResponse;
@@ -224,5 +584,24 @@ public class IeposAgent<V extends DataType<V>> extends IterativeTreeAgent<V, Iep
         public int getNumTransmitted() {
             return 1;
         }
+
+        @Override
+        public int getNumBytes() {
+            return 1 + (delta != null ? delta.length : MessageCodec.sizeOf(globalResponse));
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeBoolean(approved);
+            MessageCodec.writeValue(out, delta == null ? globalResponse : null);
+            MessageCodec.writeBytes(out, delta);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            approved = in.readBoolean();
+            globalResponse = MessageCodec.readValue(in);
+            delta = MessageCodec.readBytes(in);
+        }
     }
 }
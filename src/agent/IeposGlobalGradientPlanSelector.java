@@ -32,7 +32,7 @@ public class IeposGlobalGradientPlanSelector implements PlanSelector<IeposAgent<
             Vector gradient = gradientFunction.calcGradient(agent.globalResponse);
             costFunc.setCostVector(gradient);
 
-            return agent.optimization.argmin(costFunc, agent.possiblePlans, agent.lambda);
+            return agent.optimization.argmin(costFunc, agent.possiblePlans, null, agent.lambda, agent.localRanks);
         }
     }
 
@@ -36,7 +36,7 @@ public class IeposIndividualGradientPlanSelector implements PlanSelector<IeposAg
             Vector gradient = gradientFunction.calcGradient(otherResponse);
             costFunc.setCostVector(gradient);
 
-            return agent.optimization.argmin(costFunc, agent.possiblePlans, agent.lambda);
+            return agent.optimization.argmin(costFunc, agent.possiblePlans, null, agent.lambda, agent.localRanks);
         }
     }
 
@@ -20,7 +20,7 @@ public class IeposPlanSelector<V extends DataType<V>> implements PlanSelector<Ie
         otherResponse.subtract(agent.prevAggregatedResponse);
         otherResponse.add(agent.aggregatedResponse);
 
-        return agent.optimization.argmin(agent.globalCostFunc, agent.possiblePlans, otherResponse, agent.lambda);
+        return agent.optimization.argmin(agent.globalCostFunc, agent.possiblePlans, otherResponse, agent.lambda, agent.localRanks);
     }
 
     @Override
@@ -8,16 +8,22 @@ package agent;
 import data.Plan;
 import func.CostFunction;
 import func.PlanCostFunction;
+import agent.jfr.EventRecorder;
 import agent.logging.AgentLoggingProvider;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import protopeer.Finger;
 import protopeer.network.Message;
+import protopeer.network.NetworkAddress;
 import protopeer.time.Timer;
 import protopeer.util.quantities.Time;
+import util.Profiler;
 import data.DataType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 /**
  * An agent that performs combinatorial optimization in a tree network over
@@ -36,7 +42,45 @@ public abstract class IterativeTreeAgent<V extends DataType<V>, UP extends Itera
     int numIterations;
     int iteration;
 
-    private final Map<Finger, UP> messageBuffer = new HashMap<>();
+    // iterations are triggered by messages instead of a timer
+    private boolean eventDriven;
+    private Runnable completionListener;
+
+    // messages that arrived before the first phase started
+    private boolean started;
+    private final List<Message> pendingMsgs = new ArrayList<>();
+
+    // early termination
+    private TerminationPolicy terminationPolicy;
+    private boolean terminated;
+    private final List<Double> globalCosts = new ArrayList<>();
+    private Plan<V> finalPlan;
+    private boolean planChanged;
+    private int numChanged;
+
+    // child messages of the current iteration, stored by child slot
+    private UpMessage[] messageBuffer = new UpMessage[0];
+    private int numBufferedMsgs;
+    // peer index of the child at each slot; -1 if not known yet
+    private int[] childIndices = new int[0];
+
+    // incremental re-optimization: only changed agents and their ancestors take part
+    boolean incremental;
+    private boolean incrementalPhase;
+    private boolean hasSolution;
+    private boolean changed;
+    private boolean active = true;
+    private boolean[] activeChildren = new boolean[0];
+    private int numActiveChildren;
+
+    // state to continue from instead of starting a new phase, see Checkpoint
+    private byte[] resumeState;
+
+    // the current iteration at the root, recorded by Java Flight Recorder
+    private Object iterationEvent;
+
+    // agents that share the peers of a simulation only see their own channel
+    private int channel;
 
     /**
      * Initializes the agent with the given combinatorial optimization problem
@@ -55,6 +99,109 @@ public abstract class IterativeTreeAgent<V extends DataType<V>, UP extends Itera
         this.iteration = numIterations;
     }
 
+    /**
+     * Initializes the agent with the plans of another agent, see
+     * {@link Agent#Agent(Agent, CostFunction, AgentLoggingProvider, long)}.
+     *
+     * @param numIterations number of iterations
+     * @param planSource the agent whose plans are used
+     * @param globalCostFunc the global cost function
+     * @param loggingProvider the logger for the experiment
+     * @param seed the seed for the RNG used by this agent
+     */
+    IterativeTreeAgent(int numIterations, Agent<V> planSource, CostFunction<V> globalCostFunc, AgentLoggingProvider<? extends IterativeTreeAgent<V, UP, DOWN>> loggingProvider, long seed) {
+        super(planSource, globalCostFunc, loggingProvider, seed);
+        this.numIterations = numIterations;
+        this.iteration = numIterations;
+    }
+
+    /**
+     * Sets the policy that decides at the root when the iterations stop. The
+     * root evaluates the policy after each iteration and propagates its
+     * decision to all agents in the top-down phase. Without a policy, all
+     * iterations are executed.
+     *
+     * @param terminationPolicy the termination policy or null
+     */
+    public void setTerminationPolicy(TerminationPolicy terminationPolicy) {
+        this.terminationPolicy = terminationPolicy;
+    }
+
+    /**
+     * Enables or disables event-driven iterations. By default, an iteration
+     * starts every second. In event-driven mode, an agent starts the next
+     * iteration as soon as it has processed the top-down message of the
+     * current one, so leaves already work on the next iteration while other
+     * parts of the tree finish the current one. The duration of an iteration
+     * is then bounded by the tree depth and the link latency.
+     * <p>
+     * Since iterations no longer align with measurement epochs, each agent
+     * logs itself at the end of each iteration. Only one phase is executed.
+     *
+     * @param eventDriven true, if iterations should be triggered by messages
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+        this.logPerEpoch = !eventDriven;
+    }
+
+    /**
+     * Sets the channel of this agent. Several agents with different channels
+     * can share the peers of a simulation, e.g. to run variants of an
+     * experiment in the same tree: each agent only handles the tree messages
+     * of its own channel. The channel is not transmitted in live experiments,
+     * where each peer runs a single agent.
+     *
+     * @param channel the channel of this agent, 0 by default
+     */
+    public void setChannel(int channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Sets a callback that is invoked whenever this agent completed the last
+     * iteration of a phase. In live experiments, this signals that the agent
+     * is done instead of waiting for a fixed time.
+     *
+     * @param completionListener the callback or null
+     */
+    public void setCompletionListener(Runnable completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * @return true, if the iterations stopped before the configured number of
+     * iterations was reached
+     */
+    @Override
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * @return true, if the current phase only re-optimizes the changed agents
+     * and their ancestors
+     */
+    boolean isIncrementalPhase() {
+        return incrementalPhase;
+    }
+
+    /**
+     * @param slot the slot of a child
+     * @return true, if the child takes part in the current phase
+     */
+    boolean isActiveChild(int slot) {
+        return activeChildren[slot];
+    }
+
+    /**
+     * Marks this agent as changed, such that it takes part in the next
+     * incremental phase.
+     */
+    synchronized void markChanged() {
+        changed = true;
+    }
+
     @Override
     public int getIteration() {
         return iteration;
@@ -67,6 +214,23 @@ public abstract class IterativeTreeAgent<V extends DataType<V>, UP extends Itera
 
     @Override
     void runActiveState() {
+        if (terminated) {
+            return;
+        }
+        if (!hasTreeView) {
+            // in live runs, building the tree can take longer than the bootstrap
+            Timer loadAgentTimer = getPeer().getClock().createNewTimer();
+            loadAgentTimer.addTimerListener((Timer timer) -> runActiveState());
+            loadAgentTimer.schedule(Time.inMilliseconds(1000));
+            return;
+        }
+        if (eventDriven) {
+            // only the first phase is scheduled; iterations follow the messages
+            if (iteration >= numIterations) {
+                super.runActiveState();
+            }
+            return;
+        }
         if (iteration < numIterations - 1) {
             Timer loadAgentTimer = getPeer().getClock().createNewTimer();
             loadAgentTimer.addTimerListener((Timer timer) -> {
@@ -80,93 +244,387 @@ public abstract class IterativeTreeAgent<V extends DataType<V>, UP extends Itera
     }
 
     @Override
-    final void runPhase() {
+    public synchronized void setChildren(List<Finger> list) {
+        super.setChildren(list);
+        // the slots and the incremental solution refer to the previous children
+        childIndices = new int[children.size()];
+        Arrays.fill(childIndices, -1);
+        messageBuffer = new UpMessage[children.size()];
+        numBufferedMsgs = 0;
+        activeChildren = new boolean[children.size()];
+        hasSolution = false;
+    }
+
+    // the live transport delivers messages and timers on several threads
+    @Override
+    final synchronized void runPhase() {
+        logPerEpoch = !eventDriven;
+        if (resumeState != null) {
+            resume();
+            return;
+        }
+
         iteration = -1;
+        terminated = false;
+        globalCosts.clear();
+        finalPlan = null;
+        planChanged = true;
+
+        // an incremental phase reuses the solution of the previous phase
+        incrementalPhase = incremental && hasSolution;
+        if (!incrementalPhase) {
+            active = true;
+            Arrays.fill(activeChildren, true);
+            numActiveChildren = children.size();
+        }
+
+        initPhase();
+        if (incrementalPhase) {
+            // the representative (the root) always takes part, so the logged global state is up to date
+            if (changed || isRepresentative()) {
+                activate();
+            }
+            // the iterations start with the next timer, when all ancestors are activated
+        } else {
+            runIteration();
+        }
+
+        // in live runs, a child might start its first phase earlier
+        if (!started) {
+            started = true;
+            for (Message msg : pendingMsgs) {
+                handleIncomingMessage(msg);
+            }
+            pendingMsgs.clear();
+        }
+    }
+
+    /**
+     * Sets the state this agent continues from when its first phase starts.
+     * The state has to be taken between two iterations, when no messages are
+     * in transit.
+     *
+     * @param state the state written by {@link #writeState}
+     */
+    void resumeFrom(byte[] state) {
+        this.resumeState = state;
+    }
 
+    private void resume() {
         initPhase();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(resumeState))) {
+            readState(in);
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException("cannot restore agent " + getPeer().getIndexNumber(), ex);
+        }
+        resumeState = null;
+        started = true;
         runIteration();
     }
 
-    private void runIteration() {
+    @Override
+    void writeState(ObjectOutputStream out) throws IOException {
+        super.writeState(out);
+        out.writeInt(numAgents);
+        out.writeInt(numIterations);
+        out.writeInt(iteration);
+        out.writeBoolean(terminated);
+        out.writeInt(globalCosts.size());
+        for (double cost : globalCosts) {
+            out.writeDouble(cost);
+        }
+        writePlan(out, finalPlan);
+        out.writeBoolean(planChanged);
+        out.writeInt(numChanged);
+        out.writeBoolean(incrementalPhase);
+        out.writeBoolean(hasSolution);
+        out.writeBoolean(changed);
+        out.writeBoolean(active);
+        for (boolean activeChild : activeChildren) {
+            out.writeBoolean(activeChild);
+        }
+    }
+
+    @Override
+    void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        super.readState(in);
+        numAgents = in.readInt();
+        numIterations = in.readInt();
+        iteration = in.readInt();
+        terminated = in.readBoolean();
+        globalCosts.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            globalCosts.add(in.readDouble());
+        }
+        finalPlan = readPlan(in);
+        planChanged = in.readBoolean();
+        numChanged = in.readInt();
+        incrementalPhase = in.readBoolean();
+        hasSolution = in.readBoolean();
+        changed = in.readBoolean();
+        active = in.readBoolean();
+        numActiveChildren = 0;
+        for (int i = 0; i < activeChildren.length; i++) {
+            activeChildren[i] = in.readBoolean();
+            numActiveChildren += activeChildren[i] ? 1 : 0;
+        }
+    }
+
+    private synchronized void runIteration() {
+        if (terminated) {
+            return;
+        }
         iteration++;
 
         numTransmitted = 0;
         numComputed = 0;
+        numBytesTransmitted = 0;
 
+        if (!active) {
+            cumTransmitted = 0;
+            cumComputed = 0;
+            cumBytesTransmitted = 0;
+            return;
+        }
         if (iteration < numIterations) {
+            if (isRoot()) {
+                iterationEvent = EventRecorder.get().beginIteration();
+            }
             initIteration();
-            if (isLeaf()) {
+            if (numActiveChildren == 0) {
                 goUp();
             }
         }
     }
 
+    /**
+     * Lets this agent take part in the current incremental phase and
+     * activates the path to the root.
+     */
+    private void activate() {
+        if (!active) {
+            active = true;
+            if (!isRoot()) {
+                send(parent.getNetworkAddress(), new ChangeMessage(getPeer().getIndexNumber()));
+            }
+        }
+    }
+
     @Override
-    public void handleIncomingMessage(Message message) {
-        if (message instanceof UpMessage) {
+    public synchronized void handleIncomingMessage(Message message) {
+        if (channelOf(message) != channel) {
+            return;
+        }
+        long start = Profiler.start();
+        if (!started && (message instanceof UpMessage || message instanceof DownMessage || message instanceof ChangeMessage)) {
+            pendingMsgs.add(message);
+        } else if (message instanceof UpMessage) {
             UP msg = (UP) message;
-            messageBuffer.put(msg.child, msg);
-            if (children.size() <= messageBuffer.size()) {
+            int slot = childSlot(msg.child, msg.getSourceAddress());
+            if (messageBuffer[slot] == null) {
+                numBufferedMsgs++;
+            }
+            messageBuffer[slot] = msg;
+            if (numActiveChildren <= numBufferedMsgs) {
                 goUp();
             }
         } else if (message instanceof DownMessage) {
             goDown((DOWN) message);
+        } else if (message instanceof ChangeMessage) {
+            ChangeMessage msg = (ChangeMessage) message;
+            int slot = childSlot(msg.child, msg.getSourceAddress());
+            if (!activeChildren[slot]) {
+                activeChildren[slot] = true;
+                numActiveChildren++;
+            }
+            activate();
         }
+        Profiler.stop(Profiler.Phase.RECEIVE, start);
     }
 
     private void goUp() {
-        List<UP> orderedMsgs = new ArrayList<>();
-        for (Finger child : children) {
-            orderedMsgs.add(messageBuffer.get(child));
+        long start = Profiler.start();
+        // inactive children are represented by null
+        List<UP> orderedMsgs = new ArrayList<>(messageBuffer.length);
+        List<UP> receivedMsgs = new ArrayList<>(numBufferedMsgs);
+        for (int i = 0; i < messageBuffer.length; i++) {
+            orderedMsgs.add((UP) messageBuffer[i]);
+            if (messageBuffer[i] != null) {
+                receivedMsgs.add((UP) messageBuffer[i]);
+            }
+            messageBuffer[i] = null;
         }
-        messageBuffer.clear();
+        numBufferedMsgs = 0;
 
-        if (iteration == 0) {
-            numAgents = 1 + orderedMsgs.stream().map(msg -> msg.numAgents).reduce(0, (a, b) -> a + b);
+        if (iteration == 0 && !incrementalPhase) {
+            numAgents = 1 + receivedMsgs.stream().map(msg -> msg.numAgents).reduce(0, (a, b) -> a + b);
         }
-        numTransmitted = orderedMsgs.stream().map(msg -> msg.getNumTransmitted()).reduce(0, (a, b) -> a + b);
+        numTransmitted = receivedMsgs.stream().map(msg -> msg.getNumTransmitted()).reduce(0, (a, b) -> a + b);
         numComputed = 0;
-        cumTransmitted = numTransmitted + orderedMsgs.stream().map(msg -> msg.cumTransmitted).reduce(0, (a, b) -> Math.max(a, b));
-        cumComputed = orderedMsgs.stream().map(msg -> msg.cumComputed).reduce(0, (a, b) -> Math.max(a, b));
+        cumTransmitted = numTransmitted + receivedMsgs.stream().map(msg -> msg.cumTransmitted).reduce(0, (a, b) -> Math.max(a, b));
+        numBytesTransmitted = receivedMsgs.stream().mapToInt(msg -> msg.getNumBytes()).sum();
+        cumBytesTransmitted = numBytesTransmitted + receivedMsgs.stream().mapToLong(msg -> msg.cumBytesTransmitted).max().orElse(0);
+        cumComputed = receivedMsgs.stream().map(msg -> msg.cumComputed).reduce(0, (a, b) -> Math.max(a, b));
+        numChanged = (planChanged ? 1 : 0) + receivedMsgs.stream().map(msg -> msg.numChanged).reduce(0, (a, b) -> a + b);
 
         cumComputed -= numComputed;
         UP msg = up(orderedMsgs);
         cumComputed += numComputed;
 
-        msg.child = getPeer().getFinger();
+        msg.child = getPeer().getIndexNumber();
         if (isRoot()) {
+            Profiler.stop(Profiler.Phase.UP, start);
             goDown(atRoot(msg));
+            return;
         } else {
             msg.numAgents = numAgents;
+            msg.numChanged = numChanged;
             msg.cumTransmitted = cumTransmitted;
             msg.cumComputed = cumComputed;
+            msg.cumBytesTransmitted = cumBytesTransmitted;
             numTransmitted += msg.getNumTransmitted();
             cumTransmitted += msg.getNumTransmitted();
-            getPeer().sendMessage(parent.getNetworkAddress(), msg);
+            numBytesTransmitted += msg.getNumBytes();
+            cumBytesTransmitted += msg.getNumBytes();
+            send(parent.getNetworkAddress(), msg);
         }
+        Profiler.stop(Profiler.Phase.UP, start);
     }
 
     private void goDown(DOWN parentMsg) {
+        long start = Profiler.start();
         if (!isRoot()) {
             numAgents = parentMsg.numAgents;
             numTransmitted += parentMsg.getNumTransmitted();
             cumTransmitted = parentMsg.getNumTransmitted() + parentMsg.cumTransmitted;
             cumComputed = parentMsg.cumComputed;
+            numBytesTransmitted += parentMsg.getNumBytes();
+            cumBytesTransmitted = parentMsg.getNumBytes() + parentMsg.cumBytesTransmitted;
         }
 
         cumComputed -= numComputed;
         List<DOWN> msgs = down(parentMsg);
         cumComputed += numComputed;
 
+        planChanged = selectedPlan != finalPlan;
+        finalPlan = selectedPlan;
+
+        boolean terminate;
+        if (isRoot()) {
+            terminate = checkTermination();
+        } else {
+            terminate = parentMsg.terminate;
+        }
+        if (terminate) {
+            terminated = true;
+            numIterations = iteration + 1;
+        }
+
         for (int i = 0; i < msgs.size(); i++) {
+            if (!activeChildren[i]) {
+                continue;
+            }
             DOWN msg = msgs.get(i);
+            msg.terminate = terminate;
             msg.numAgents = numAgents;
             msg.cumTransmitted = cumTransmitted;
             msg.cumComputed = cumComputed;
+            msg.cumBytesTransmitted = cumBytesTransmitted;
             numTransmitted += msg.getNumTransmitted();
             cumTransmitted += msg.getNumTransmitted();
-            getPeer().sendMessage(children.get(i).getNetworkAddress(), msg);
+            numBytesTransmitted += msg.getNumBytes();
+            cumBytesTransmitted += msg.getNumBytes();
+            send(children.get(i).getNetworkAddress(), msg);
         }
+
+        boolean completed = iteration >= numIterations - 1;
+        if (completed) {
+            // the next incremental phase starts without participants
+            hasSolution = true;
+            if (incremental) {
+                changed = false;
+                active = false;
+                Arrays.fill(activeChildren, false);
+                numActiveChildren = 0;
+            }
+        }
+        if (iterationEvent != null) {
+            EventRecorder.get().endIteration(iterationEvent, iteration, numAgents, numChanged, terminate);
+            iterationEvent = null;
+        }
+        Profiler.stop(Profiler.Phase.DOWN, start);
+        if (eventDriven) {
+            // the first two epochs are reserved by AgentLoggingProvider
+            log(iteration + 2);
+            if (!completed) {
+                runIteration();
+            }
+        }
+        if (completed && completionListener != null) {
+            completionListener.run();
+        }
+    }
+
+    private int channelOf(Message msg) {
+        if (msg instanceof UpMessage) {
+            return ((UpMessage) msg).channel;
+        } else if (msg instanceof DownMessage) {
+            return ((DownMessage) msg).channel;
+        } else if (msg instanceof ChangeMessage) {
+            return ((ChangeMessage) msg).channel;
+        }
+        return channel;
+    }
+
+    private void send(NetworkAddress destination, Message msg) {
+        long start = Profiler.start();
+        if (msg instanceof UpMessage) {
+            ((UpMessage) msg).channel = channel;
+        } else if (msg instanceof DownMessage) {
+            ((DownMessage) msg).channel = channel;
+        } else if (msg instanceof ChangeMessage) {
+            ((ChangeMessage) msg).channel = channel;
+        }
+        Object event = EventRecorder.get().beginMessageSend();
+        getPeer().sendMessage(destination, msg);
+        if (event != null) {
+            int bytes = 0;
+            if (msg instanceof UpMessage) {
+                bytes = ((UpMessage) msg).getNumBytes();
+            } else if (msg instanceof DownMessage) {
+                bytes = ((DownMessage) msg).getNumBytes();
+            }
+            EventRecorder.get().endMessageSend(event, getPeer().getIndexNumber(), msg.getClass(), bytes);
+        }
+        Profiler.stop(Profiler.Phase.SEND, start);
+    }
+
+    private boolean checkTermination() {
+        if (terminationPolicy == null || iteration >= numIterations - 1) {
+            return false;
+        }
+        globalCosts.add(globalCostFunc.calcCost(globalResponse));
+        return terminationPolicy.isConverged(globalCosts, numChanged);
+    }
+
+    /**
+     * Returns the slot of the child that sent the given message. The slot of a
+     * child is resolved once from the source address of its first message;
+     * afterwards the lookup only compares peer indices.
+     */
+    private int childSlot(int child, NetworkAddress source) {
+        for (int i = 0; i < childIndices.length; i++) {
+            if (childIndices[i] == child) {
+                return i;
+            }
+        }
+        for (int i = 0; i < childIndices.length; i++) {
+            if (childIndices[i] < 0 && children.get(i).getNetworkAddress().equals(source)) {
+                childIndices[i] = child;
+                return i;
+            }
+        }
+        throw new IllegalStateException("message from unknown child " + child);
     }
 
     abstract void initPhase();
@@ -179,22 +637,91 @@ public abstract class IterativeTreeAgent<V extends DataType<V>, UP extends Itera
 
     abstract List<DOWN> down(DOWN parentMsg);
 
+    // the counters are written by hand to keep the live messages compact;
+    // the channel is only used in simulations
     static abstract class UpMessage extends Message {
 
-        public Finger child;
-        public int numAgents;
-        public int cumTransmitted;
-        public int cumComputed;
+        public transient int channel;
+        public transient int child;
+        public transient int numAgents;
+        public transient int numChanged;
+        public transient int cumTransmitted;
+        public transient int cumComputed;
+        public transient long cumBytesTransmitted;
 
         public abstract int getNumTransmitted();
+
+        /**
+         * @return the number of bytes of the payload of this message
+         */
+        public abstract int getNumBytes();
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(child);
+            out.writeInt(numAgents);
+            out.writeInt(numChanged);
+            out.writeInt(cumTransmitted);
+            out.writeInt(cumComputed);
+            out.writeLong(cumBytesTransmitted);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            child = in.readInt();
+            numAgents = in.readInt();
+            numChanged = in.readInt();
+            cumTransmitted = in.readInt();
+            cumComputed = in.readInt();
+            cumBytesTransmitted = in.readLong();
+        }
     }
 
     static abstract class DownMessage extends Message {
 
-        public int numAgents;
-        public int cumTransmitted;
-        public int cumComputed;
+        public transient int channel;
+        public transient boolean terminate;
+        public transient int numAgents;
+        public transient int cumTransmitted;
+        public transient int cumComputed;
+        public transient long cumBytesTransmitted;
 
         public abstract int getNumTransmitted();
+
+        /**
+         * @return the number of bytes of the payload of this message
+         */
+        public abstract int getNumBytes();
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeBoolean(terminate);
+            out.writeInt(numAgents);
+            out.writeInt(cumTransmitted);
+            out.writeInt(cumComputed);
+            out.writeLong(cumBytesTransmitted);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            terminate = in.readBoolean();
+            numAgents = in.readInt();
+            cumTransmitted = in.readInt();
+            cumComputed = in.readInt();
+            cumBytesTransmitted = in.readLong();
+        }
+    }
+
+    /**
+     * Announces a changed agent in its subtree to the parent.
+     */
+    static class ChangeMessage extends Message {
+
+        public transient int channel;
+        public int child;
+
+        public ChangeMessage(int child) {
+            this.child = child;
+        }
     }
 }
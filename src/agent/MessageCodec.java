@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import data.DataType;
+import data.Vector;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * The wire format of the payload of the agent messages. The messages delegate
+ * the serialization of their fields to this class, so the codec is used by any
+ * transport that relies on Java serialization, e.g. the live ProtoPeer
+ * transport.
+ * <p>
+ * Vectors are written as a length-prefixed array of primitive values. Other
+ * data types fall back to default Java serialization. Each value is tagged
+ * with its encoding, so a receiver decodes any encoding regardless of its own
+ * configuration.
+ * <p>
+ * In addition, a vector can be delta coded relative to the previous vector
+ * that was sent over the same link. The bits of every value are XORed with the
+ * bits of the previous value; unchanged values cost a single bit and changed
+ * values only transmit their non-zero XOR bytes. Delta coding is lossless and
+ * falls back to a full encoding if there is no previous vector or if the delta
+ * would not be smaller.
+ *
+ * @author Peter
+ */
+public class MessageCodec {
+
+    /**
+     * The encoding of the data values in a message.
+     */
+    public enum Encoding {
+        /**
+         * default Java serialization
+         */
+        OBJECT,
+        /**
+         * vectors as 64 bit floating point numbers
+         */
+        FLOAT64,
+        /**
+         * vectors as 32 bit floating point numbers; lossy
+         */
+        FLOAT32;
+    }
+
+    private static final byte NULL = 0;
+    private static final byte OBJECT = 1;
+    private static final byte VECTOR64 = 2;
+    private static final byte VECTOR32 = 3;
+
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+
+    private static volatile Encoding encoding = Encoding.FLOAT64;
+
+    /**
+     * Sets the encoding used for data values in outgoing messages.
+     *
+     * @param encoding the encoding
+     */
+    public static void setEncoding(Encoding encoding) {
+        MessageCodec.encoding = encoding;
+    }
+
+    public static Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Writes the given value with the configured encoding.
+     *
+     * @param out the stream of the message
+     * @param value the value to write; may be null
+     * @throws IOException if writing fails
+     */
+    public static void writeValue(ObjectOutputStream out, DataType<?> value) throws IOException {
+        writeValue(out, value, encoding);
+    }
+
+    /**
+     * Writes the given value with the given encoding.
+     *
+     * @param out the stream of the message
+     * @param value the value to write; may be null
+     * @param encoding the encoding
+     * @throws IOException if writing fails
+     */
+    public static void writeValue(ObjectOutputStream out, DataType<?> value, Encoding encoding) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Vector && encoding != Encoding.OBJECT) {
+            Vector vector = (Vector) value;
+            int n = vector.getNumDimensions();
+            if (encoding == Encoding.FLOAT32) {
+                out.writeByte(VECTOR32);
+                out.writeInt(n);
+                for (int i = 0; i < n; i++) {
+                    out.writeFloat((float) vector.getValue(i));
+                }
+            } else {
+                out.writeByte(VECTOR64);
+                out.writeInt(n);
+                for (int i = 0; i < n; i++) {
+                    out.writeDouble(vector.getValue(i));
+                }
+            }
+        } else {
+            out.writeByte(OBJECT);
+            out.writeObject(value);
+        }
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeValue} writes for the given
+     * value. Values that use Java serialization are not measured and count as
+     * a single byte.
+     *
+     * @param value the value; may be null
+     * @return the number of bytes
+     */
+    public static int sizeOf(Object value) {
+        if (value instanceof Vector && encoding != Encoding.OBJECT) {
+            int bytesPerValue = encoding == Encoding.FLOAT32 ? 4 : 8;
+            return 5 + bytesPerValue * ((Vector) value).getNumDimensions();
+        }
+        return 1;
+    }
+
+    /**
+     * Writes a byte array with a length prefix.
+     *
+     * @param out the stream of the message
+     * @param bytes the bytes to write; may be null
+     * @throws IOException if writing fails
+     */
+    public static void writeBytes(ObjectOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a byte array written by {@link #writeBytes}.
+     *
+     * @param in the stream of the message
+     * @return the bytes; may be null
+     * @throws IOException if reading fails
+     */
+    public static byte[] readBytes(ObjectInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes the given vector relative to the reference, the vector that was
+     * previously sent over the same link. The reference is updated to the
+     * given vector afterwards.
+     *
+     * @param value the vector to encode
+     * @param reference the previously sent vector; null if there is none
+     * @return the encoded vector
+     */
+    public static byte[] encodeDelta(Vector value, Vector reference) {
+        int n = value.getNumDimensions();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int fullSize = 5 + 8 * n;
+
+        if (reference != null && reference.getNumDimensions() == n) {
+            out.write(DELTA);
+            writeVarInt(out, n);
+            byte[] changed = new byte[(n + 7) / 8];
+            for (int i = 0; i < n; i++) {
+                if (Double.doubleToRawLongBits(value.getValue(i)) != Double.doubleToRawLongBits(reference.getValue(i))) {
+                    changed[i >>> 3] |= 1 << (i & 7);
+                }
+            }
+            out.write(changed, 0, changed.length);
+            for (int i = 0; i < n && out.size() < fullSize; i++) {
+                long xor = Double.doubleToRawLongBits(value.getValue(i)) ^ Double.doubleToRawLongBits(reference.getValue(i));
+                if (xor != 0) {
+                    int leading = Long.numberOfLeadingZeros(xor) >>> 3;
+                    int trailing = Long.numberOfTrailingZeros(xor) >>> 3;
+                    out.write(leading << 4 | trailing);
+                    for (int b = trailing; b < 8 - leading; b++) {
+                        out.write((int) (xor >>> (8 * b)));
+                    }
+                }
+            }
+        }
+
+        if (out.size() == 0 || out.size() >= fullSize) {
+            out.reset();
+            out.write(FULL);
+            writeVarInt(out, n);
+            for (int i = 0; i < n; i++) {
+                long bits = Double.doubleToRawLongBits(value.getValue(i));
+                for (int b = 0; b < 8; b++) {
+                    out.write((int) (bits >>> (8 * b)));
+                }
+            }
+        }
+
+        if (reference != null && reference.getNumDimensions() == n) {
+            reference.set(value);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a vector encoded by {@link #encodeDelta}. The reference must be
+     * the vector that was previously received over the same link; it is
+     * overwritten with the decoded vector.
+     *
+     * @param bytes the encoded vector
+     * @param reference the previously received vector; null if there is none
+     * @return the decoded vector; the reference itself if it was given and
+     * matches the dimensions
+     */
+    public static Vector decodeDelta(byte[] bytes, Vector reference) {
+        int[] pos = new int[1];
+        byte type = bytes[pos[0]++];
+        int n = readVarInt(bytes, pos);
+        Vector value = reference != null && reference.getNumDimensions() == n ? reference : new Vector(n);
+
+        if (type == DELTA) {
+            int changed = pos[0];
+            pos[0] += (n + 7) / 8;
+            for (int i = 0; i < n; i++) {
+                if ((bytes[changed + (i >>> 3)] & (1 << (i & 7))) != 0) {
+                    int header = bytes[pos[0]++] & 0xff;
+                    int leading = header >>> 4;
+                    int trailing = header & 0xf;
+                    long xor = 0;
+                    for (int b = trailing; b < 8 - leading; b++) {
+                        xor |= (bytes[pos[0]++] & 0xffL) << (8 * b);
+                    }
+                    long bits = Double.doubleToRawLongBits(value.getValue(i)) ^ xor;
+                    value.setValue(i, Double.longBitsToDouble(bits));
+                }
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                long bits = 0;
+                for (int b = 0; b < 8; b++) {
+                    bits |= (bytes[pos[0]++] & 0xffL) << (8 * b);
+                }
+                value.setValue(i, Double.longBitsToDouble(bits));
+            }
+        }
+        return value;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = bytes[pos[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue}.
+     *
+     * @param <V> the type of the value
+     * @param in the stream of the message
+     * @return the value; may be null
+     * @throws IOException if reading fails
+     * @throws ClassNotFoundException if the class of a value is unknown
+     */
+    public static <V extends DataType<V>> V readValue(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case OBJECT:
+                return (V) in.readObject();
+            case VECTOR64:
+            case VECTOR32:
+                int n = in.readInt();
+                Vector vector = new Vector(n);
+                for (int i = 0; i < n; i++) {
+                    vector.setValue(i, type == VECTOR64 ? in.readDouble() : in.readFloat());
+                }
+                return (V) (DataType) vector;
+            default:
+                throw new IOException("unknown value type " + type);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.List;
+
+/**
+ * Stops the iterations if the global cost did not improve on the best cost so
+ * far for a given number of iterations.
+ *
+ * @author Peter
+ */
+public class NoImprovementTerminationPolicy implements TerminationPolicy {
+
+    private final int numIterations;
+
+    /**
+     * @param numIterations the number of iterations without improvement after
+     * which the iterations stop
+     */
+    public NoImprovementTerminationPolicy(int numIterations) {
+        this.numIterations = numIterations;
+    }
+
+    @Override
+    public boolean isConverged(List<Double> globalCosts, int numChanged) {
+        int lastImprovement = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < globalCosts.size(); i++) {
+            if (globalCosts.get(i) < best) {
+                best = globalCosts.get(i);
+                lastImprovement = i;
+            }
+        }
+        return globalCosts.size() - 1 - lastImprovement >= numIterations;
+    }
+
+    @Override
+    public String toString() {
+        return "no improvement for " + numIterations + " iterations";
+    }
+}
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import data.DataType;
+import util.Profiler;
 
 /**
  *
@@ -25,9 +26,21 @@ public class Optimization {
     }
 
     public <V extends DataType<V>> List<V> calcAllCombinations(List<List<V>> choicesPerAgent) {
-        List<V> combinations = new ArrayList<>();
-        
+        return calcAllCombinations(choicesPerAgent, new ArrayList<>());
+    }
+
+    /**
+     * Computes all combinations into the given list. Values already contained
+     * in the list are reused, so repeated calls with the same list do not
+     * allocate new values.
+     *
+     * @param choicesPerAgent the choices of each agent
+     * @param combinations the list that receives the combinations
+     * @return the given list
+     */
+    public <V extends DataType<V>> List<V> calcAllCombinations(List<List<V>> choicesPerAgent, List<V> combinations) {
         if(choicesPerAgent.isEmpty() || choicesPerAgent.get(0).isEmpty()) {
+            combinations.clear();
             return combinations;
         }
         
@@ -35,7 +48,13 @@ public class Optimization {
         int numCombinations = choicesPerAgent.stream().map(p -> p.size()).reduce(1, (a, b) -> a * b);
 
         // init combinations
-        for (int i = 0; i < numCombinations; i++) {
+        while (combinations.size() > numCombinations) {
+            combinations.remove(combinations.size() - 1);
+        }
+        for (V combination : combinations) {
+            combination.reset();
+        }
+        while (combinations.size() < numCombinations) {
             combinations.add(prototypeValue.cloneNew());
         }
 
@@ -79,6 +98,24 @@ public class Optimization {
     }
         
     public <V extends DataType<V>> int argmin(CostFunction<V> costFunction, List<? extends HasValue<? extends V>> choices, V constant, double lambda) {
+        return argmin(costFunction, choices, constant, lambda, null);
+    }
+
+    /**
+     * Selects the choice with the minimal cost. For lambda-PREF, the cost is
+     * combined with the score of the choice, scaled by the standard deviation
+     * of the costs of all choices.
+     *
+     * @param costFunction the cost function
+     * @param choices the choices
+     * @param constant a value that is added to each choice or null
+     * @param lambda the weight of the scores
+     * @param scores the score of each choice or null for i/choices.size(),
+     * the normalized rank of the i-th choice
+     * @return the index of the selected choice
+     */
+    public <V extends DataType<V>> int argmin(CostFunction<V> costFunction, List<? extends HasValue<? extends V>> choices, V constant, double lambda, double[] scores) {
+        long start = Profiler.start();
         double minCost = Double.POSITIVE_INFINITY;
         int selected = -1;
         int numOpt = 0;
@@ -89,16 +126,20 @@ public class Optimization {
         double sqrSum = 0;
         double std = 0;
 
+        V buffer = constant == null ? null : constant.cloneNew();
         for (int i = 0; i < choices.size(); i++) {
             V combined;
             if(constant != null) {
-                combined = constant.cloneThis();
+                combined = buffer;
+                combined.set(constant);
                 combined.add(choices.get(i).getValue());
             } else {
                 combined = choices.get(i).getValue();
             }
             
+            long costStart = Profiler.start();
             double cost = costFunction.calcCost(combined);
+            Profiler.stop(Profiler.Phase.COST, costStart);
             costs[i] = cost;
             sum += cost;
             sqrSum += cost*cost;
@@ -114,7 +155,7 @@ public class Optimization {
         for(int i = 0; i < choices.size(); i++) {
             double cost = costs[i];
             if (lambda != 0) {
-                double score = i/(double)choices.size();
+                double score = scores != null ? scores[i] : i/(double)choices.size();
                 cost = (1 - lambda) * cost + lambda * score * std;
             }
             
@@ -130,6 +171,7 @@ public class Optimization {
             }
         }
         
+        Profiler.stop(Profiler.Phase.ARGMIN, start);
         return selected;
     }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.List;
+
+/**
+ * Stops the iterations if the relative improvement of the global cost in the
+ * current iteration is smaller than a given threshold. The improvement is
+ * measured against the best cost of the previous iterations.
+ *
+ * @author Peter
+ */
+public class RelativeImprovementTerminationPolicy implements TerminationPolicy {
+
+    private final double epsilon;
+
+    /**
+     * @param epsilon the minimal relative improvement that keeps the iterations
+     * going
+     */
+    public RelativeImprovementTerminationPolicy(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public boolean isConverged(List<Double> globalCosts, int numChanged) {
+        if (globalCosts.size() < 2) {
+            return false;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < globalCosts.size() - 1; i++) {
+            best = Math.min(best, globalCosts.get(i));
+        }
+        double cost = globalCosts.get(globalCosts.size() - 1);
+        if (best == 0) {
+            return true;
+        }
+        return (best - cost) / Math.abs(best) < epsilon;
+    }
+
+    @Override
+    public String toString() {
+        return "relative improvement < " + epsilon;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.List;
+
+/**
+ * Decides whether an iterative agent has converged and can stop before the
+ * configured number of iterations is reached. The policy is evaluated by the
+ * root after each iteration.
+ *
+ * @author Peter
+ */
+public interface TerminationPolicy {
+
+    /**
+     * @param globalCosts the global cost after each iteration so far; the last
+     * element belongs to the current iteration
+     * @param numChanged the number of agents that changed their selected plan
+     * in the previous iteration; all agents count as changed before the first
+     * iteration
+     * @return true, if the iterations should stop after the current one
+     */
+    public boolean isConverged(List<Double> globalCosts, int numChanged);
+}
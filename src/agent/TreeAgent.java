@@ -26,6 +26,7 @@ public abstract class TreeAgent<V extends DataType<V>> extends Agent<V> implemen
     // tree properties
     Finger parent = null;
     final List<Finger> children = new ArrayList<>();
+    boolean hasTreeView;
 
     /**
      * Initializes the agent with the given combinatorial optimization problem
@@ -54,6 +55,19 @@ public abstract class TreeAgent<V extends DataType<V>> extends Agent<V> implemen
         super(possiblePlans, globalCostFunc, localCost, loggingProvider, seed);
     }
 
+    /**
+     * Initializes the agent with the plans of another agent, see
+     * {@link Agent#Agent(Agent, CostFunction, AgentLoggingProvider, long)}.
+     *
+     * @param planSource the agent whose plans are used
+     * @param globalCostFunc the global cost function
+     * @param loggingProvider the logger for the experiment
+     * @param seed the seed for the RNG used by this agent
+     */
+    TreeAgent(Agent<V> planSource, CostFunction<V> globalCostFunc, AgentLoggingProvider<? extends TreeAgent<V>> loggingProvider, long seed) {
+        super(planSource, globalCostFunc, loggingProvider, seed);
+    }
+
     public boolean isRoot() {
         return parent == null && !children.isEmpty();
     }
@@ -86,6 +100,7 @@ public abstract class TreeAgent<V extends DataType<V>> extends Agent<V> implemen
     public void setTreeView(Finger parent, List<Finger> children) {
         this.setParent(parent);
         this.setChildren(children);
+        hasTreeView = true;
     }
 
     public List<Finger> getChildren() {
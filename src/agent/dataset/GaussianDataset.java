@@ -38,6 +38,8 @@ public class GaussianDataset implements Dataset<Vector> {
     private final double mean;
     private final double std;
     private final long seed;
+    private final List<Long> agentSeeds = new ArrayList<>();
+    private Random seedRandom;
 
     /**
      * Creates a generator for a Gaussian distributed dataset.
@@ -59,14 +61,7 @@ public class GaussianDataset implements Dataset<Vector> {
 
     @Override
     public List<Plan<Vector>> getPlans(int agentId) {
-        // get the correct seed of the agent
-        // the seed for each agent is generated randomly based on the global seed
-        Random random = new Random(seed);
-        long agentSeed = random.nextLong();
-        for (int i = 1; i <= agentId; i++) {
-            agentSeed = random.nextLong();
-        }
-        random = new Random(agentSeed);
+        Random random = new Random(getAgentSeed(agentId));
 
         // generate the plans
         List<Plan<Vector>> plans = new ArrayList<>();
@@ -78,6 +73,24 @@ public class GaussianDataset implements Dataset<Vector> {
         return plans;
     }
 
+    /**
+     * The seed for each agent is generated randomly based on the global seed.
+     * The seeds are cached, so creating the plans of n agents draws n seeds
+     * instead of n^2/2.
+     *
+     * @param agentId the index of the agent
+     * @return the seed of the agent
+     */
+    private synchronized long getAgentSeed(int agentId) {
+        if (seedRandom == null) {
+            seedRandom = new Random(seed);
+        }
+        while (agentSeeds.size() <= agentId) {
+            agentSeeds.add(seedRandom.nextLong());
+        }
+        return agentSeeds.get(agentId);
+    }
+
     /**
      * Writes the dataset to the given directory. The format is compatible with
      * the {@link FileVectorDataset}.
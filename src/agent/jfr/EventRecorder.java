@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.jfr;
+
+import java.util.List;
+
+/**
+ * Records the events of the agents with Java Flight Recorder. The core of
+ * the project runs on Java 8, which has no {@code jdk.jfr} API, so the agents
+ * only use this facade: by default it records nothing. If the JVM provides
+ * JFR and the classes in jfr/src were compiled into the build (JDK 11 or
+ * newer), the recorder that emits the JFR events is loaded instead.
+ * <p>
+ * Each event is started with a begin method, which returns null if the
+ * event is not recorded, and finished with the corresponding end method.
+ * Callers skip the end method, and the computation of its arguments, for
+ * null events.
+ *
+ * @author Peter
+ */
+public class EventRecorder {
+
+    private static final EventRecorder INSTANCE = load();
+
+    /**
+     * @return the recorder of this JVM
+     */
+    public static EventRecorder get() {
+        return INSTANCE;
+    }
+
+    private static EventRecorder load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventRecorder) Class.forName("agent.jfr.JfrEventRecorder").newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return new EventRecorder();
+        }
+    }
+
+    /**
+     * Starts an iteration at the root of the tree.
+     *
+     * @return the event or null
+     */
+    public Object beginIteration() {
+        return null;
+    }
+
+    /**
+     * Ends an iteration when the root sent the global response to its
+     * children.
+     *
+     * @param event the event returned by {@link #beginIteration()}
+     * @param iteration the iteration
+     * @param numAgents the number of agents in the tree
+     * @param numChanged the number of agents that changed their plan in the
+     * previous iteration
+     * @param terminated true, if the iterations stop
+     */
+    public void endIteration(Object event, int iteration, int numAgents, int numChanged, boolean terminated) {
+    }
+
+    /**
+     * Starts the selection of a plan.
+     *
+     * @return the event or null
+     */
+    public Object beginPlanSelection() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginPlanSelection()}
+     * @param agent the index of the agent
+     * @param iteration the iteration
+     * @param selected the index of the selected plan
+     * @param candidates the number of plans the agent chose from
+     */
+    public void endPlanSelection(Object event, int agent, int iteration, int selected, int candidates) {
+    }
+
+    /**
+     * Starts the decision which changes of the children are approved.
+     *
+     * @return the event or null
+     */
+    public Object beginApproval() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginApproval()}
+     * @param agent the index of the agent
+     * @param iteration the iteration
+     * @param combinations the number of evaluated combinations
+     * @param selections the selection of each participating child, 1 for an
+     * approved change
+     */
+    public void endApproval(Object event, int agent, int iteration, int combinations, List<Integer> selections) {
+    }
+
+    /**
+     * Starts sending a message.
+     *
+     * @return the event or null
+     */
+    public Object beginMessageSend() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginMessageSend()}
+     * @param agent the index of the sending agent
+     * @param type the class of the message
+     * @param bytes the number of bytes of the payload
+     */
+    public void endMessageSend(Object event, int agent, Class<?> type, int bytes) {
+    }
+}
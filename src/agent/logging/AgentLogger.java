@@ -18,6 +18,9 @@
 package agent.logging;
 
 import agent.Agent;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import protopeer.measurement.MeasurementLog;
@@ -33,6 +36,7 @@ import protopeer.measurement.MeasurementLog;
  */
 public abstract class AgentLogger<A extends Agent> implements Cloneable {
     int run;
+    SamplingPolicy sampling = SamplingPolicy.all();
     
     /**
      * Sets the current run. Each run corresponds to one repetition of the experiment.
@@ -42,6 +46,31 @@ public abstract class AgentLogger<A extends Agent> implements Cloneable {
         this.run = run;
     }
 
+    /**
+     * Sets the agents and iterations this logger records. Only loggers that
+     * record entries per agent consider the policy.
+     * @param sampling the sampling policy
+     */
+    public void setSampling(SamplingPolicy sampling) {
+        this.sampling = sampling;
+    }
+
+    /**
+     * @return the agents and iterations this logger records
+     */
+    public SamplingPolicy getSampling() {
+        return sampling;
+    }
+
+    /**
+     * @param agent the agent that is logged
+     * @return true, if the current iteration of the agent is recorded
+     */
+    protected boolean isSampled(Agent agent) {
+        return sampling.includesIteration(agent.getIteration(), agent.getNumIterations())
+                && sampling.includesAgent(agent.getPeer().getIndexNumber());
+    }
+
     /**
      * Initializes the logger for an experiment
      * @param agent the initialized agent
@@ -62,6 +91,27 @@ public abstract class AgentLogger<A extends Agent> implements Cloneable {
      */
     public abstract void print(MeasurementLog log);
 
+    /**
+     * Writes the state this logger keeps for its agent between iterations,
+     * see {@link agent.Checkpoint}. Loggers with such state override this
+     * method and {@link #readState(ObjectInputStream)}; the default writes
+     * nothing.
+     * @param out the state of the agent
+     * @throws IOException if the state cannot be written
+     */
+    public void writeState(ObjectOutputStream out) throws IOException {
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(ObjectOutputStream)}.
+     * Called after {@link #init(Agent)} when an agent resumes from a checkpoint.
+     * @param in the state of the agent
+     * @throws IOException if the state cannot be read
+     * @throws ClassNotFoundException if the state contains unknown classes
+     */
+    public void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    }
+
     @Override
     public AgentLogger<A> clone() {
         try {
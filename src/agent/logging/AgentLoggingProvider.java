@@ -6,6 +6,9 @@
 package agent.logging;
 
 import agent.Agent;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -30,6 +33,13 @@ public class AgentLoggingProvider<A extends Agent> {
     // in-memory
     private MeasurementLog inMemoryLog;
 
+    // streaming; the log shared by all agents
+    private final MeasurementLog sharedLog;
+
+    // columnar output; records the raw measurements of the loggers
+    private final ColumnarLog.Recorder recorder;
+    private final boolean recordOnly;
+
     /**
      * Creates an agent logging provider that provides the given logging
      * capabilities.
@@ -40,13 +50,54 @@ public class AgentLoggingProvider<A extends Agent> {
      * the log is in-memory
      */
     public AgentLoggingProvider(List<AgentLogger<? super A>> loggers, int run, String outputFile) {
+        this(loggers, run, outputFile, null, null);
+    }
+
+    /**
+     * Creates an agent logging provider that writes all measurements directly
+     * into the given log, which is shared by all agents.
+     *
+     * @param loggers the loggers of this AgentLoggingProvider; the loggers are
+     * cloned in this constructor
+     * @param sharedLog the log of all agents
+     * @return the agent logging provider
+     */
+    static <A extends Agent> AgentLoggingProvider<A> streaming(List<AgentLogger<? super A>> loggers, int run, MeasurementLog sharedLog) {
+        return new AgentLoggingProvider<>(loggers, run, null, sharedLog, null);
+    }
+
+    /**
+     * Creates an agent logging provider that writes all measurements to the
+     * given columnar log, which is shared by all agents.
+     *
+     * @param loggers the loggers of this AgentLoggingProvider; the loggers are
+     * cloned in this constructor
+     * @param writer the columnar log of all agents
+     * @return the agent logging provider
+     */
+    static <A extends Agent> AgentLoggingProvider<A> columnar(List<AgentLogger<? super A>> loggers, int run, ColumnarLog.Writer writer) {
+        return new AgentLoggingProvider<>(loggers, run, null, null, writer);
+    }
+
+    private AgentLoggingProvider(List<AgentLogger<? super A>> loggers, int run, String outputFile, MeasurementLog sharedLog, ColumnarLog.Writer writer) {
+        this.sharedLog = sharedLog;
+        this.recordOnly = writer != null;
+        // the out-of-memory log and the files of all FileWriters record every measurement
+        List<ColumnarLog.Writer> recorded = new ArrayList<>();
+        if (writer != null) {
+            recorded.add(writer);
+        }
         if (loggers != null) {
             for (AgentLogger<? super A> logger : loggers) {
                 AgentLogger<? super A> clone = logger.clone();
                 clone.setRun(run);
                 this.loggers.add(clone);
+                if (clone instanceof FileWriter) {
+                    recorded.add(((FileWriter) clone).getWriter());
+                }
             }
         }
+        this.recorder = recorded.isEmpty() ? null : new ColumnarLog.Recorder(recorded);
         if (outputFile != null) {
             measurementDumper = new MeasurementFileDumper(outputFile);
         } else {
@@ -64,7 +115,7 @@ public class AgentLoggingProvider<A extends Agent> {
      * @param agent the agent that is be logged
      */
     public void init(Agent agent) {
-        if (measurementDumper == null) {
+        if (measurementDumper == null && sharedLog == null && !recordOnly) {
             inMemoryLog = agent.getPeer().getMeasurementLogger().getMeasurementLog();
         }
         for (AgentLogger logger : loggers) {
@@ -80,9 +131,22 @@ public class AgentLoggingProvider<A extends Agent> {
      * @param agent the agent that is logged
      */
     public void log(MeasurementLog log, int epochNumber, Agent agent) {
-        if (epochNumber >= 2) {
+        if (epochNumber >= 2 && recordOnly) {
+            // the measurements are only written to the columnar log
+            for (AgentLogger logger : loggers) {
+                logger.log(recorder.to(null, logger, agent), epochNumber, agent);
+            }
+            log.shrink(epochNumber, epochNumber + 1);
+        } else if (epochNumber >= 2 && sharedLog != null) {
+            // the measurements of all agents are aggregated as they arrive
+            synchronized (sharedLog) {
+                for (AgentLogger logger : loggers) {
+                    logger.log(target(sharedLog, logger, agent), epochNumber, agent);
+                }
+            }
+        } else if (epochNumber >= 2) {
             for (AgentLogger logger : loggers) {
-                logger.log(log, epochNumber, agent);
+                logger.log(target(log, logger, agent), epochNumber, agent);
             }
 
             boolean dataAvailable = true;
@@ -102,4 +166,40 @@ public class AgentLoggingProvider<A extends Agent> {
             log.shrink(epochNumber, epochNumber + 1);
         }
     }
+
+    /**
+     * Writes the state the loggers keep for the agent, see
+     * {@link AgentLogger#writeState(ObjectOutputStream)}.
+     *
+     * @param out the state of the agent
+     * @throws IOException if the state cannot be written
+     */
+    public void writeState(ObjectOutputStream out) throws IOException {
+        out.writeInt(loggers.size());
+        for (AgentLogger logger : loggers) {
+            logger.writeState(out);
+        }
+    }
+
+    /**
+     * Restores the state of the loggers. The loggers have to be the same as
+     * when the state was written.
+     *
+     * @param in the state of the agent
+     * @throws IOException if the state cannot be read
+     * @throws ClassNotFoundException if the state contains unknown classes
+     */
+    public void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        int numLoggers = in.readInt();
+        if (numLoggers != loggers.size()) {
+            throw new IOException("the state has " + numLoggers + " loggers instead of " + loggers.size());
+        }
+        for (AgentLogger logger : loggers) {
+            logger.readState(in);
+        }
+    }
+
+    private MeasurementLog target(MeasurementLog log, AgentLogger<?> logger, Agent agent) {
+        return recorder == null ? log : recorder.to(log, logger, agent);
+    }
 }
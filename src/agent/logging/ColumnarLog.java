@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.logging;
+
+import agent.Agent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * A compact, append-only file format for the raw measurements of the
+ * loggers. Each measurement is a row with the typed columns logger, epoch,
+ * iteration, agent, tag set and value. The rows are buffered and written in
+ * blocks; within a block the columns are stored one after the other and
+ * compressed with Deflate. Loggers and tag sets are stored once in a
+ * dictionary; each block carries the entries that were added since the
+ * previous block.
+ * <p>
+ * File layout: MAGIC, VERSION, followed by blocks. A block consists of a
+ * header (number of rows, length of the dictionary entries, length of the
+ * compressed and uncompressed columns), the serialized dictionary entries and
+ * the compressed columns. A file that was not closed properly can be read up
+ * to its last complete block. Logs that were not recorded row by row, e.g.
+ * the merged logs of other processes, are stored as a block with -1 rows
+ * whose compressed payload is the serialized log.
+ * <p>
+ * Reading decompresses the blocks in parallel, replays the rows of each block
+ * into a {@link MeasurementLog} and merges these logs pairwise. This gives the
+ * same aggregates as logging the measurements directly. The rows can be
+ * restricted to some loggers, which only replays what these loggers need.
+ *
+ * @author Peter
+ */
+public class ColumnarLog {
+
+    private static final int MAGIC = 0x45504f4c; // "EPOL"
+    private static final int VERSION = 2; // version 1 has no log blocks
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int ROW_SIZE = 5 * Integer.BYTES + Double.BYTES;
+
+    private ColumnarLog() {
+    }
+
+    /**
+     * Checks whether the given file starts like a columnar log.
+     *
+     * @param file the file
+     * @return true, if the file is a columnar log
+     */
+    public static boolean isColumnarLog(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC && isSupported(in.readInt());
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isSupported(int version) {
+        return version == 1 || version == VERSION;
+    }
+
+    /**
+     * Reads all measurements of the given file.
+     *
+     * @param file the columnar log
+     * @return the measurements as log
+     * @throws IOException if the file cannot be read
+     */
+    public static MeasurementLog read(File file) throws IOException {
+        return read(file, logger -> true);
+    }
+
+    /**
+     * Reads the measurements of some loggers.
+     *
+     * @param file the columnar log
+     * @param loggers selects the loggers by class name
+     * @return the measurements of the selected loggers as log
+     * @throws IOException if the file cannot be read
+     */
+    public static MeasurementLog read(File file, Predicate<String> loggers) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        List<String> loggerNames = new ArrayList<>();
+        List<Set<Object>> tagSets = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Buffer methods are called via Buffer to stay linkable on Java 8
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            ((Buffer) header).limit(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || !isSupported(header.getInt(4))) {
+                throw new IOException("not a columnar log: " + file);
+            }
+
+            // collect the blocks and the dictionary
+            long size = channel.size();
+            long position = HEADER_SIZE;
+            while (position + BLOCK_HEADER_SIZE <= size) {
+                ((Buffer) header).clear();
+                readFully(channel, header, position);
+                int numRows = header.getInt(0);
+                int dictionaryLength = header.getInt(4);
+                int compressedLength = header.getInt(8);
+                int rawLength = header.getInt(12);
+                long end = position + BLOCK_HEADER_SIZE + dictionaryLength + compressedLength;
+                if (end > size) {
+                    Logger.getLogger(ColumnarLog.class.getName()).log(Level.WARNING,
+                            "incomplete block at the end of {0}", file);
+                    break;
+                }
+                if (dictionaryLength > 0) {
+                    ByteBuffer dictionary = ByteBuffer.allocate(dictionaryLength);
+                    readFully(channel, dictionary, position + BLOCK_HEADER_SIZE);
+                    readDictionary(dictionary.array(), loggerNames, tagSets);
+                }
+                blocks.add(new Block(position + BLOCK_HEADER_SIZE + dictionaryLength, numRows, compressedLength, rawLength));
+                position = end;
+            }
+
+            boolean[] selected = new boolean[loggerNames.size()];
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = loggers.test(loggerNames.get(i));
+            }
+
+            // decompress and replay the blocks in parallel and merge the
+            // partial logs pairwise
+            try {
+                return blocks.parallelStream()
+                        .map(block -> block.replay(channel, selected, tagSets))
+                        .filter(Objects::nonNull)
+                        .reduce(LoggingProvider::merge)
+                        .orElseGet(MeasurementLog::new);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            position += n;
+        }
+    }
+
+    private static void readDictionary(byte[] bytes, List<String> loggerNames, List<Set<Object>> tagSets) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            for (int i = in.readInt(); i > 0; i--) {
+                loggerNames.add(in.readUTF());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                Object[] tags = (Object[]) in.readObject();
+                tagSets.add(Collections.unmodifiableSet(new HashSet<>(Arrays.asList(tags))));
+            }
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static class Block {
+
+        final long position;
+        final int numRows;
+        final int compressedLength;
+        final int rawLength;
+
+        Block(long position, int numRows, int compressedLength, int rawLength) {
+            this.position = position;
+            this.numRows = numRows;
+            this.compressedLength = compressedLength;
+            this.rawLength = rawLength;
+        }
+
+        MeasurementLog replay(FileChannel channel, boolean[] selected, List<Set<Object>> tagSets) {
+            try {
+                ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+                readFully(channel, compressed, position);
+                Inflater inflater = new Inflater();
+                byte[] raw = new byte[rawLength];
+                try {
+                    inflater.setInput(compressed.array());
+                    int n = 0;
+                    while (n < rawLength && !inflater.finished()) {
+                        n += inflater.inflate(raw, n, rawLength - n);
+                    }
+                } finally {
+                    inflater.end();
+                }
+                if (numRows < 0) {
+                    // a whole log, which belongs to no particular logger
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(raw))) {
+                        return (MeasurementLog) in.readObject();
+                    } catch (ClassNotFoundException ex) {
+                        throw new IOException(ex);
+                    }
+                }
+
+                // columns: logger, epoch, iteration, agent, tag set, value
+                ByteBuffer columns = ByteBuffer.wrap(raw);
+                int loggerColumn = 0;
+                int epochColumn = numRows * Integer.BYTES;
+                int tagSetColumn = 4 * numRows * Integer.BYTES;
+                int valueColumn = 5 * numRows * Integer.BYTES;
+
+                MeasurementLog log = null;
+                for (int row = 0; row < numRows; row++) {
+                    int logger = columns.getInt(loggerColumn + row * Integer.BYTES);
+                    if (!selected[logger]) {
+                        continue;
+                    }
+                    if (log == null) {
+                        log = new MeasurementLog();
+                    }
+                    log.logTagSet(columns.getInt(epochColumn + row * Integer.BYTES),
+                            tagSets.get(columns.getInt(tagSetColumn + row * Integer.BYTES)),
+                            columns.getDouble(valueColumn + row * Double.BYTES));
+                }
+                return log;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (DataFormatException ex) {
+                throw new UncheckedIOException(new IOException(ex));
+            }
+        }
+    }
+
+    /**
+     * Appends measurements to a columnar log. The file is created when the
+     * first measurement arrives. Thread-safe.
+     */
+    public static class Writer implements Closeable {
+
+        private final File file;
+        private RandomAccessFile out;
+        private boolean closed;
+
+        // dictionary
+        private final Map<String, Integer> loggerIds = new HashMap<>();
+        private final Map<Set<Object>, Integer> tagSetIds = new HashMap<>();
+        private final List<String> newLoggers = new ArrayList<>();
+        private final List<Object[]> newTagSets = new ArrayList<>();
+
+        // the rows of the current block
+        private final int[] loggers = new int[BLOCK_SIZE];
+        private final int[] epochs = new int[BLOCK_SIZE];
+        private final int[] iterations = new int[BLOCK_SIZE];
+        private final int[] agents = new int[BLOCK_SIZE];
+        private final int[] tagSets = new int[BLOCK_SIZE];
+        private final double[] values = new double[BLOCK_SIZE];
+        private int numRows;
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] compressed = new byte[64];
+
+        /**
+         * @param file the file to write to; an existing file is replaced
+         */
+        public Writer(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Appends a measurement.
+         *
+         * @param logger the class name of the logger
+         * @param epoch the epoch
+         * @param iteration the iteration of the agent
+         * @param agent the index of the agent
+         * @param tags the tags of the measurement
+         * @param value the value
+         */
+        public synchronized void append(String logger, int epoch, int iteration, int agent, Set<Object> tags, double value) {
+            if (closed) {
+                throw new IllegalStateException("log already closed: " + file);
+            }
+            Integer loggerId = loggerIds.get(logger);
+            if (loggerId == null) {
+                loggerId = loggerIds.size();
+                loggerIds.put(logger, loggerId);
+                newLoggers.add(logger);
+            }
+            Integer tagSetId = tagSetIds.get(tags);
+            if (tagSetId == null) {
+                tagSetId = tagSetIds.size();
+                tagSetIds.put(tags, tagSetId);
+                newTagSets.add(tags.toArray());
+            }
+            loggers[numRows] = loggerId;
+            epochs[numRows] = epoch;
+            iterations[numRows] = iteration;
+            agents[numRows] = agent;
+            tagSets[numRows] = tagSetId;
+            values[numRows] = value;
+            numRows++;
+            if (numRows == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * Appends a whole log, e.g. the merged log of agents in another
+         * process. Reading the file merges it with the other measurements.
+         *
+         * @param log the log
+         */
+        public synchronized void append(MeasurementLog log) {
+            if (closed) {
+                throw new IllegalStateException("log already closed: " + file);
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                    oos.writeObject(log);
+                }
+                writeBlock(-1, new byte[0], bytes.toByteArray());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * Writes the buffered measurements as a block.
+         */
+        public synchronized void flush() {
+            if (numRows > 0) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * Writes the buffered measurements and closes the file. The file is
+         * created even if it has no measurements.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            deflater.end();
+            try {
+                open();
+                out.close();
+            } catch (IOException ex) {
+                Logger.getLogger(ColumnarLog.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        private void flushBlock() {
+            try {
+                byte[] dictionary = new byte[0];
+                if (!newLoggers.isEmpty() || !newTagSets.isEmpty()) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream dict = new ObjectOutputStream(bytes)) {
+                        dict.writeInt(newLoggers.size());
+                        for (String logger : newLoggers) {
+                            dict.writeUTF(logger);
+                        }
+                        dict.writeInt(newTagSets.size());
+                        for (Object[] tags : newTagSets) {
+                            dict.writeObject(tags);
+                        }
+                    }
+                    dictionary = bytes.toByteArray();
+                    newLoggers.clear();
+                    newTagSets.clear();
+                }
+
+                ByteBuffer columns = ByteBuffer.allocate(numRows * ROW_SIZE);
+                columns.asIntBuffer().put(loggers, 0, numRows);
+                ((Buffer) columns).position(numRows * Integer.BYTES);
+                columns.asIntBuffer().put(epochs, 0, numRows);
+                ((Buffer) columns).position(2 * numRows * Integer.BYTES);
+                columns.asIntBuffer().put(iterations, 0, numRows);
+                ((Buffer) columns).position(3 * numRows * Integer.BYTES);
+                columns.asIntBuffer().put(agents, 0, numRows);
+                ((Buffer) columns).position(4 * numRows * Integer.BYTES);
+                columns.asIntBuffer().put(tagSets, 0, numRows);
+                ((Buffer) columns).position(5 * numRows * Integer.BYTES);
+                columns.asDoubleBuffer().put(values, 0, numRows);
+
+                writeBlock(numRows, dictionary, columns.array());
+                numRows = 0;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * Creates the file and writes the header, unless the file is open.
+         */
+        private void open() throws IOException {
+            if (out == null) {
+                File dir = file.getAbsoluteFile().getParentFile();
+                if (dir != null) {
+                    dir.mkdirs();
+                }
+                out = new RandomAccessFile(file, "rw");
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+        }
+
+        private void writeBlock(int numRows, byte[] dictionary, byte[] raw) throws IOException {
+            open();
+
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + dictionary.length + compressedLength);
+            block.putInt(numRows);
+            block.putInt(dictionary.length);
+            block.putInt(compressedLength);
+            block.putInt(raw.length);
+            block.put(dictionary);
+            block.put(compressed, 0, compressedLength);
+            out.write(block.array());
+        }
+    }
+
+    /**
+     * A log that appends all measurements of one logger of one agent to a
+     * writer and optionally forwards them to another log. Loggers only write
+     * to this log; queries return nothing.
+     */
+    static class Recorder extends MeasurementLog {
+
+        private final List<Writer> writers;
+        private MeasurementLog target;
+        private String logger;
+        private int iteration;
+        private int agent;
+
+        /**
+         * @param writers the writers that receive all measurements
+         */
+        Recorder(List<Writer> writers) {
+            this.writers = writers;
+        }
+
+        /**
+         * Prepares this recorder for the next logger.
+         *
+         * @param target the log the measurements are forwarded to, may be null
+         * @param logger the logger that writes the next measurements
+         * @param agent the agent that is logged
+         * @return this recorder
+         */
+        Recorder to(MeasurementLog target, AgentLogger<?> logger, Agent agent) {
+            this.target = target;
+            this.logger = logger.getClass().getName();
+            this.iteration = agent.getIteration();
+            this.agent = agent.getPeer().getIndexNumber();
+            return this;
+        }
+
+        private void append(int epoch, Set<Object> tags, double value) {
+            for (Writer writer : writers) {
+                writer.append(logger, epoch, iteration, agent, tags, value);
+            }
+        }
+
+        @Override
+        public void logTagSet(int epoch, Set<Object> tags, double value) {
+            append(epoch, new HashSet<>(tags), value);
+            if (target != null) {
+                target.logTagSet(epoch, tags, value);
+            }
+        }
+
+        @Override
+        public void log(int epoch, Object tag, double value) {
+            Set<Object> tags = new HashSet<>();
+            tags.add(tag);
+            append(epoch, tags, value);
+            if (target != null) {
+                target.log(epoch, tag, value);
+            }
+        }
+
+        @Override
+        public void log(int epoch, Object tag1, Object tag2, double value) {
+            Set<Object> tags = new HashSet<>();
+            tags.add(tag1);
+            tags.add(tag2);
+            append(epoch, tags, value);
+            if (target != null) {
+                target.log(epoch, tag1, tag2, value);
+            }
+        }
+
+        @Override
+        public void log(int epoch, Object tag1, Object tag2, Object tag3, double value) {
+            Set<Object> tags = new HashSet<>();
+            tags.add(tag1);
+            tags.add(tag2);
+            tags.add(tag3);
+            append(epoch, tags, value);
+            if (target != null) {
+                target.log(epoch, tag1, tag2, tag3, value);
+            }
+        }
+    }
+}
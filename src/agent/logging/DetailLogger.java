@@ -22,8 +22,12 @@ import data.Vector;
 import func.CostFunction;
 import func.StdDevCostFunction;
 import agent.Agent;
+import agent.MessageCodec;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -40,7 +44,8 @@ import protopeer.measurement.MeasurementLog;
 /**
  * stores the selected plan for each agent for each iteration in one file per
  * agent. stores the global cost, the global response and the cumulated global
- * response
+ * response. If the agents are sampled, only the files of the sampled agents
+ * are written; the root entries are written for all sampled iterations.
  *
  * @author Peter
  */
@@ -64,11 +69,13 @@ public class DetailLogger extends AgentLogger<Agent<Vector>> {
 
     @Override
     public void log(MeasurementLog log, int epoch, Agent<Vector> agent) {
-        Entry entry = new Entry();
-        entry.agentId = agentId;
-        entry.iteration = agent.getIteration();
-        entry.selectedPlan = agent.getSelectedPlan();
-        log.log(epoch, agentId, entry, 0.0);
+        if (isSampled(agent)) {
+            Entry entry = new Entry();
+            entry.agentId = agentId;
+            entry.iteration = agent.getIteration();
+            entry.selectedPlan = agent.getSelectedPlan();
+            log.log(epoch, agentId, entry, 0.0);
+        }
 
         if (agent.isRepresentative()) {
             if (cumulatedResponse == null) {
@@ -77,6 +84,9 @@ public class DetailLogger extends AgentLogger<Agent<Vector>> {
                 cumulatedResponse = cumulatedResponse.cloneThis();
                 cumulatedResponse.add(agent.getGlobalResponse());
             }
+            if (!sampling.includesIteration(agent.getIteration(), agent.getNumIterations())) {
+                return;
+            }
 
             RootEntry rootEntry = new RootEntry();
             rootEntry.iteration = agent.getIteration();
@@ -88,6 +98,16 @@ public class DetailLogger extends AgentLogger<Agent<Vector>> {
         }
     }
 
+    @Override
+    public void writeState(ObjectOutputStream out) throws IOException {
+        MessageCodec.writeValue(out, cumulatedResponse, MessageCodec.Encoding.FLOAT64);
+    }
+
+    @Override
+    public void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        cumulatedResponse = MessageCodec.readValue(in);
+    }
+
     private String str2filename(String str) {
         return str.replace(' ', '_').replace('-', 'm').replace('.', '_');
     }
@@ -6,22 +6,30 @@
 package agent.logging;
 
 import agent.Agent;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import protopeer.measurement.MeasurementLog;
 
 /**
  * An AgentLogger that has no logging logic. It reads the log written by
- * FileWriter and makes the data accessible to other AgentLoggers.
+ * FileWriter and makes the data accessible to other AgentLoggers. The
+ * measurements can be restricted to the loggers that are printed, which skips
+ * the measurements of all other loggers while reading. Logs that were written
+ * with Java serialization by earlier versions are read as well.
  *
  * @author Peter
  */
 public class FileReader extends AgentLogger {
 
     private String filename;
+    private final Set<String> loggers;
 
     /**
      * Creates a new FileReader that reads from the specified file.
@@ -30,7 +38,21 @@ public class FileReader extends AgentLogger {
      * @param filename the name of the file.
      */
     public FileReader(String filename) {
+        this(filename, new Class<?>[0]);
+    }
+
+    /**
+     * Creates a new FileReader that reads the measurements of the given
+     * loggers from the specified file. The data is read from
+     * output-data/filename.
+     *
+     * @param filename the name of the file.
+     * @param loggers the loggers whose measurements are read; all loggers if
+     * empty
+     */
+    public FileReader(String filename, Class<?>... loggers) {
         this.filename = filename;
+        this.loggers = Arrays.stream(loggers).map(Class::getName).collect(Collectors.toSet());
     }
 
     @Override
@@ -43,7 +65,16 @@ public class FileReader extends AgentLogger {
 
     @Override
     public void print(MeasurementLog log) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("output-data/" + filename))) {
+        File file = new File("output-data", filename);
+        if (ColumnarLog.isColumnarLog(file)) {
+            try {
+                log.mergeWith(ColumnarLog.read(file, logger -> loggers.isEmpty() || loggers.contains(logger)));
+            } catch (IOException ex) {
+                Logger.getLogger(FileReader.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            return;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
             MeasurementLog loaded = (MeasurementLog) ois.readObject();
             log.mergeWith(loaded);
         } catch (IOException | ClassNotFoundException ex) {
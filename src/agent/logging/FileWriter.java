@@ -7,22 +7,22 @@ package agent.logging;
 
 import agent.Agent;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import protopeer.measurement.MeasurementLog;
 
 /**
- * An AgentLogger that has no logging logic. It writes the log to a file. This
- * file can be read by FileReader.
+ * An AgentLogger that has no logging logic. It writes the measurements of the
+ * other loggers to a {@link ColumnarLog} file as they are logged; the file is
+ * completed when the results are printed. This file can be read by
+ * FileReader. Each FileWriter writes its own file, in-memory as well as
+ * out-of-memory. Logs that are added to the LoggingProvider, e.g. from other
+ * processes, are written to the file as a whole.
  *
  * @author Peter
  */
 public class FileWriter extends AgentLogger {
 
     private String filename;
+    private final ColumnarLog.Writer writer;
 
     /**
      * Creates a new FileWriter that writes to the specified file.
@@ -32,6 +32,14 @@ public class FileWriter extends AgentLogger {
      */
     public FileWriter(String filename) {
         this.filename = filename;
+        this.writer = new ColumnarLog.Writer(new File("output-data", filename));
+    }
+
+    /**
+     * @return the writer shared by all clones of this logger
+     */
+    ColumnarLog.Writer getWriter() {
+        return writer;
     }
 
     @Override
@@ -44,11 +52,6 @@ public class FileWriter extends AgentLogger {
 
     @Override
     public void print(MeasurementLog log) {
-        new File("output-data").mkdir();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("output-data/" + filename))) {
-            oos.writeObject(log);
-        } catch (IOException ex) {
-            Logger.getLogger(FileWriter.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        writer.close();
     }
 }
@@ -7,6 +7,7 @@ package agent.logging;
 
 import func.CostFunction;
 import agent.Agent;
+import agent.IeposAgent;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -18,7 +19,9 @@ import protopeer.measurement.MeasurementLog;
 import data.DataType;
 
 /**
- * An AgentLogger that logs the global cost after each iteration.
+ * An AgentLogger that logs the global cost after each iteration. Runs of
+ * warm-started agents (see {@link IeposAgent#setInitialPlan(int)}) are logged
+ * and printed separately from cold-started runs, so both can be compared.
  *
  * @author Peter
  */
@@ -76,7 +79,7 @@ public class GlobalCostLogger<V extends DataType<V>> extends AgentLogger<Agent<V
     public void log(MeasurementLog log, int epoch, Agent<V> agent) {
         if (agent.isRepresentative()) {
             double cost = costFunction.calcCost(agent.getGlobalResponse());
-            log.log(epoch, GlobalCostLogger.class.getName(), agent.getIteration(), cost);
+            log.log(epoch, getTag(agent), agent.getIteration(), cost);
         }
     }
 
@@ -93,12 +96,29 @@ public class GlobalCostLogger<V extends DataType<V>> extends AgentLogger<Agent<V
         }
     }
 
+    private String getTag(Agent<V> agent) {
+        boolean warmStart = agent instanceof IeposAgent && ((IeposAgent) agent).isWarmStart();
+        return warmStart ? GlobalCostLogger.class.getName() + ".warm" : GlobalCostLogger.class.getName();
+    }
+
     private void internalPrint(MeasurementLog log, PrintStream out) {
+        String warmTag = GlobalCostLogger.class.getName() + ".warm";
+        boolean warmOnly = hasValues(log, warmTag) && !hasValues(log, GlobalCostLogger.class.getName());
+        internalPrint(log, out, GlobalCostLogger.class.getName(), "global cost:", !warmOnly);
+        internalPrint(log, out, warmTag, "global cost (warm start):", false);
+    }
+
+    private boolean hasValues(MeasurementLog log, String tag) {
+        Aggregate aggregate = log.getAggregate(tag, 0);
+        return aggregate != null && aggregate.getNumValues() > 0;
+    }
+
+    private void internalPrint(MeasurementLog log, PrintStream out, String tag, String title, boolean always) {
         List<Double> avg = new ArrayList<>();
         List<Double> std = new ArrayList<>();
 
         for (int i = 0; true; i++) {
-            Aggregate aggregate = log.getAggregate(GlobalCostLogger.class.getName(), i);
+            Aggregate aggregate = log.getAggregate(tag, i);
             if (aggregate == null || aggregate.getNumValues() < 1) {
                 break;
             }
@@ -106,7 +126,10 @@ public class GlobalCostLogger<V extends DataType<V>> extends AgentLogger<Agent<V
             std.add(aggregate.getStdDev());
         }
 
-        out.println("global cost:");
+        if (avg.isEmpty() && !always) {
+            return;
+        }
+        out.println(title);
         out.println("avg = " + avg);
         out.println("std = " + std);
     }
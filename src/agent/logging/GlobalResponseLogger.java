@@ -22,6 +22,7 @@ import data.Vector;
 import func.DifferentiableCostFunction;
 import func.VarCostFunction;
 import agent.Agent;
+import agent.MessageCodec;
 import java.awt.Color;
 import java.awt.Container;
 import java.awt.Font;
@@ -29,6 +30,9 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -96,6 +100,16 @@ public class GlobalResponseLogger extends AgentLogger<Agent<Vector>> {
         }
     }
 
+    @Override
+    public void writeState(ObjectOutputStream out) throws IOException {
+        MessageCodec.writeValue(out, cumulatedResponse, MessageCodec.Encoding.FLOAT64);
+    }
+
+    @Override
+    public void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        cumulatedResponse = MessageCodec.readValue(in);
+    }
+
     private String str2filename(String str) {
         return str.replace(' ', '_').replace('-', 'm').replace('.', '_');
     }
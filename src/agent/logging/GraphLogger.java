@@ -49,6 +49,9 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.geom.AffineTransform;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
@@ -68,14 +71,18 @@ import java.util.Set;
 import java.util.TreeSet;
 
 /**
- * Prints a graph of the tree network.
+ * Prints a graph of the tree network. If the agents are sampled, only the
+ * sampled agents and the links between them are shown; iterations that are
+ * not sampled show the previous sampled iteration.
  *
  * @author Peter
  */
 public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>> {
 
     private final Type type;
-    private final Map<Finger, Integer> selectedPlanIdxPerAgent = new HashMap<>();
+    // per agent state; each agent has its own clone of this logger
+    private int prevSelectedPlanIdx = -1;
+    private TreeNode treeNode;
 
     private final Dimension size = new Dimension(512, 512);
     private Forest<Node, Integer> graph;
@@ -125,16 +132,20 @@ public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>
 
     @Override
     public void init(TreeAgent<V> agent) {
-        selectedPlanIdxPerAgent.clear();
+        prevSelectedPlanIdx = -1;
+        treeNode = null;
     }
 
     @Override
     public void log(MeasurementLog log, int epoch, TreeAgent<V> agent) {
-        int prevIdx = selectedPlanIdxPerAgent.getOrDefault(agent.getPeer().getFinger(), -1);
+        int prevIdx = prevSelectedPlanIdx;
         int idx = agent.getPossiblePlans().indexOf(agent.getSelectedPlan());
-        selectedPlanIdxPerAgent.put(agent.getPeer().getFinger(), idx);
+        prevSelectedPlanIdx = idx;
 
-        TreeNode node = new TreeNode(agent.getPeer().getFinger(), agent.getChildren());
+        if (treeNode == null) {
+            treeNode = new TreeNode(agent.getPeer().getIndexNumber(), agent.getPeer().getFinger(), agent.getChildren());
+        }
+        TreeNode node = treeNode;
 
         double cost = 0;
         switch (type) {
@@ -146,10 +157,23 @@ public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>
                 break;
         }
 
+        if (!isSampled(agent)) {
+            return;
+        }
         int iteration = agent.getIteration();
         log.log(epoch, iteration, node, cost);
     }
 
+    @Override
+    public void writeState(ObjectOutputStream out) throws IOException {
+        out.writeInt(prevSelectedPlanIdx);
+    }
+
+    @Override
+    public void readState(ObjectInputStream in) throws IOException {
+        prevSelectedPlanIdx = in.readInt();
+    }
+
     @Override
     public void print(MeasurementLog log) {
         int numAgents = log.getTagsOfType(TreeNode.class).size();
@@ -192,6 +216,11 @@ public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>
             float[] agentValues = new float[numIterations];
             for (int i = 0; i < numIterations; i++) {
                 double localError = log.getAggregate(i, agent).getAverage();
+                if (Double.isNaN(localError) && i > 0 && !sampling.includesIteration(i, numIterations + 1)) {
+                    // iteration not sampled, show the previous one
+                    agentValues[i] = agentValues[i - 1];
+                    continue;
+                }
                 if (Double.isNaN(localError)) {
                     numIterations = i;
                     break;
@@ -214,7 +243,9 @@ public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>
         for (Node node : graph.getVertices()) {
             for (Finger f : node.agent.children) {
                 Node child = idx2Node.get(f.getNetworkAddress());
-                graph.addEdge(edge++, node, child);
+                if (child != null) {
+                    graph.addEdge(edge++, node, child);
+                }
             }
         }
 
@@ -444,21 +475,21 @@ public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>
 
     }
 
-    private class TreeNode implements Serializable {
+    private static class TreeNode implements Serializable {
 
+        public final int index;
         public final Finger id;
         public final List<Finger> children;
 
-        public TreeNode(Finger id, List<Finger> children) {
+        public TreeNode(int index, Finger id, List<Finger> children) {
+            this.index = index;
             this.id = id;
             this.children = children;
         }
 
         @Override
         public int hashCode() {
-            int hash = 7;
-            hash = 97 * hash + Objects.hashCode(this.id);
-            return hash;
+            return index;
         }
 
         @Override
@@ -473,6 +504,9 @@ public class GraphLogger<V extends DataType<V>> extends AgentLogger<TreeAgent<V>
                 return false;
             }
             final TreeNode other = (TreeNode) obj;
+            if (this.index != other.index) {
+                return false;
+            }
             if (!Objects.equals(this.id, other.id)) {
                 return false;
             }
@@ -12,6 +12,8 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import protopeer.measurement.Aggregate;
@@ -19,7 +21,9 @@ import protopeer.measurement.MeasurementLog;
 import data.DataType;
 
 /**
- * Logs the local cost for each agent after each iteration.
+ * Logs the local cost for each agent after each iteration. If the agents or
+ * iterations are sampled, the results are the averages over the sampled
+ * agents, followed by the number of sampled values per iteration.
  *
  * @author Peter
  */
@@ -75,7 +79,13 @@ public class LocalCostLogger<V extends DataType<V>> extends AgentLogger<Agent<V>
 
     @Override
     public void log(MeasurementLog log, int epoch, Agent<V> agent) {
-        double cost = costFunction.calcCost(agent.getSelectedPlan());
+        if (!isSampled(agent)) {
+            return;
+        }
+        // the agent caches the local costs of its plans
+        double cost = costFunction == agent.getLocalCostFunction()
+                ? agent.getSelectedLocalCost()
+                : costFunction.calcCost(agent.getSelectedPlan());
         log.log(epoch, new Token(run, agent.getIteration()), cost);
     }
 
@@ -97,6 +107,12 @@ public class LocalCostLogger<V extends DataType<V>> extends AgentLogger<Agent<V>
 
         List<Double> avg = new ArrayList<>();
         List<Double> std = new ArrayList<>();
+        List<Integer> samples = new ArrayList<>();
+        Map<Integer, Integer> numValues = new TreeMap<>();
+        for (Object tokenObj : log.getTagsOfType(Token.class)) {
+            Token token = (Token) tokenObj;
+            numValues.merge(token.iter, log.getAggregate(token).getNumValues(), Integer::sum);
+        }
 
         Aggregate test = log.getAggregate(LocalCostLogger.class.getName(), 0);
         if (test == null || test.getNumValues() < 1) {
@@ -108,18 +124,29 @@ public class LocalCostLogger<V extends DataType<V>> extends AgentLogger<Agent<V>
             }
         }
 
-        for (int i = 0; true; i++) {
-            Aggregate aggregate = log.getAggregateByEpochNumber(localCostEpoch, LocalCostLogger.class.getName(), i);
+        // the logged iterations; all iterations unless they are sampled
+        List<Integer> iterations = new ArrayList<>(numValues.keySet());
+        boolean allIterations = iterations.isEmpty() || iterations.get(iterations.size() - 1) == iterations.size() - 1;
+        for (int i = 0; allIterations || i < iterations.size(); i++) {
+            int iteration = allIterations ? i : iterations.get(i);
+            Aggregate aggregate = log.getAggregateByEpochNumber(localCostEpoch, LocalCostLogger.class.getName(), iteration);
             if (aggregate == null || aggregate.getNumValues() < 1) {
                 break;
             }
             avg.add(aggregate.getAverage());
             std.add(aggregate.getStdDev());
+            samples.add(numValues.getOrDefault(iteration, 0));
         }
 
         out.println("local cost:");
+        if (!allIterations) {
+            out.println("iterations = " + iterations.subList(0, avg.size()));
+        }
         out.println("avg = " + avg);
         out.println("std = " + std);
+        if (!sampling.isAll() || !allIterations) {
+            out.println("n = " + samples);
+        }
     }
 
     protected static class Token implements Serializable {
@@ -9,9 +9,11 @@ import agent.Agent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import protopeer.measurement.LogReplayer;
@@ -20,21 +22,30 @@ import util.Util;
 
 /**
  * Provides logging capabilities for a network of agents. Supports in-memory as
- * well as out-of-memory logging.
+ * well as out-of-memory logging. Out-of-memory logs are written as a
+ * {@link ColumnarLog}; files of earlier versions in the output directory,
+ * written by a MeasurementFileDumper, are read as well.
  *
  * @author Peter
  */
 public class LoggingProvider<A extends Agent> {
 
+    // number of files that are read and merged together in out-of-memory mode
+    private static final int MERGE_BATCH_SIZE = 1024;
+
     private MeasurementLog log;
     private final List<AgentLogger<? super A>> loggers = new ArrayList<>();
 
     // directory where the logs are stored in case of out-of-memory logging
     private final String outputDir;
+    private final ColumnarLog.Writer writer;
 
     // links to the agent providers for in-memory logging
     private final Map<Integer, AgentLoggingProvider<? super A>> agentProviders = new HashMap<>();
 
+    // all agents log directly into one log
+    private boolean streaming;
+
     /**
      * Creates a LoggingProvider object.
      */
@@ -54,11 +65,13 @@ public class LoggingProvider<A extends Agent> {
 
         if (isInMemory()) {
             log = new MeasurementLog();
+            writer = null;
         } else {
             log = null;
             File dir = new File(outputDir);
             Util.clearDirectory(dir);
             dir.mkdir();
+            writer = new ColumnarLog.Writer(new File(dir, "measurements"));
         }
     }
 
@@ -66,6 +79,26 @@ public class LoggingProvider<A extends Agent> {
         loggers.add(logger);
     }
 
+    /**
+     * Enables or disables streaming aggregation. If enabled, the agents do
+     * not keep logs of their own, but write each measurement directly into
+     * the log of this provider. Measurements with the same tags and epoch are
+     * accumulated in a single aggregate (count, sum, sum of squares, min and
+     * max), so the memory does not grow with the number of agents unless a
+     * logger tags its measurements per agent, and no merge is necessary at
+     * the end. Must be set before the agent logging providers are created;
+     * only supported for in-memory logging.
+     *
+     * @param streaming true, if measurements should be aggregated as they
+     * arrive
+     */
+    public void setStreaming(boolean streaming) {
+        if (streaming && !isInMemory()) {
+            throw new UnsupportedOperationException("streaming is only supported for in-memory logs");
+        }
+        this.streaming = streaming;
+    }
+
     /**
      * Returns the AgentLoggingProvider for the agent with the given agent id.
      *
@@ -74,7 +107,9 @@ public class LoggingProvider<A extends Agent> {
      */
     public AgentLoggingProvider getAgentLoggingProvider(int agentId, int run) {
         AgentLoggingProvider<? super A> agentProvider;
-        if (isInMemory()) {
+        if (streaming) {
+            agentProvider = AgentLoggingProvider.streaming(loggers, run, log);
+        } else if (isInMemory()) {
             if (agentProviders.containsKey(agentId)) {
                 MeasurementLog prevLog = agentProviders.get(agentId).getInMemoryLog();
                 if (prevLog != null) {
@@ -84,11 +119,67 @@ public class LoggingProvider<A extends Agent> {
             agentProvider = new AgentLoggingProvider<>(loggers, run, null);
             agentProviders.put(agentId, agentProvider);
         } else {
-            agentProvider = new AgentLoggingProvider<>(loggers, run, outputDir + "/" + run + "_" + agentId);
+            agentProvider = AgentLoggingProvider.columnar(loggers, run, writer);
         }
         return agentProvider;
     }
 
+    /**
+     * Adds the given log to the in-memory log, e.g. the log of agents that ran
+     * in another process. The log is also written to the files of the
+     * {@link FileWriter}s. Not supported for out-of-memory logging.
+     *
+     * @param log the log to add
+     */
+    public void addLog(MeasurementLog log) {
+        if (!isInMemory()) {
+            throw new UnsupportedOperationException("logs can only be added to an in-memory log");
+        }
+        synchronized (this.log) {
+            this.log.mergeWith(log);
+        }
+        for (AgentLogger<? super A> logger : loggers) {
+            if (logger instanceof FileWriter) {
+                ((FileWriter) logger).getWriter().append(log);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the merged logs of all agents without consuming them,
+     * e.g. for a checkpoint while the agents are still running. Not supported
+     * for out-of-memory logging.
+     *
+     * @return a copy of the merged log
+     */
+    public MeasurementLog snapshotLog() {
+        if (!isInMemory()) {
+            throw new UnsupportedOperationException("only in-memory logs can be copied");
+        }
+        MeasurementLog snapshot;
+        synchronized (log) {
+            snapshot = log.clone();
+        }
+        for (AgentLoggingProvider<? super A> agentProvider : agentProviders.values()) {
+            MeasurementLog agentLog = agentProvider.getInMemoryLog();
+            if (agentLog != null) {
+                snapshot.mergeWith(agentLog);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Merges and returns the logs of all agents. In out-of-memory mode, the
+     * agents cannot log anymore afterwards.
+     *
+     * @return the merged log
+     */
+    public MeasurementLog getLog() {
+        mergeLogs();
+        return log;
+    }
+
     /**
      * Prints the results for each logger.
      */
@@ -107,6 +198,8 @@ public class LoggingProvider<A extends Agent> {
         if (isInMemory()) {
             log = getExperiment();
         } else {
+            // the log is complete, so the file can be closed before reading
+            writer.close();
             log = readExperiment(new File(outputDir));
         }
     }
@@ -125,16 +218,40 @@ public class LoggingProvider<A extends Agent> {
     private MeasurementLog readExperiment(File experimentDir) {
         MeasurementLog log = new MeasurementLog();
 
-        LogReplayer replayer = new LogReplayer();
-        for (File file : experimentDir.listFiles()) {
-            try {
-                MeasurementLog l = replayer.loadLogFromFile(file.getPath());
-                log.mergeWith(l);
-            } catch (IOException | ClassNotFoundException ex) {
-                Logger.getLogger(LoggingProvider.class.getName()).log(Level.SEVERE, null, ex);
+        // read and merge the files of each batch in parallel, pairwise like a
+        // tree; only the partial logs of one batch are in memory at a time
+        File[] files = experimentDir.listFiles();
+        for (int from = 0; from < files.length; from += MERGE_BATCH_SIZE) {
+            Arrays.stream(files, from, Math.min(from + MERGE_BATCH_SIZE, files.length))
+                    .parallel()
+                    .map(LoggingProvider::readLog)
+                    .filter(Objects::nonNull)
+                    .reduce(LoggingProvider::merge)
+                    .ifPresent(log::mergeWith);
+        }
+
+        return log;
+    }
+
+    private static MeasurementLog readLog(File file) {
+        try {
+            if (ColumnarLog.isColumnarLog(file)) {
+                return ColumnarLog.read(file);
             }
+            return new LogReplayer().loadLogFromFile(file.getPath());
+        } catch (IOException | ClassNotFoundException ex) {
+            Logger.getLogger(LoggingProvider.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
         }
+    }
 
+    /**
+     * Merges two partial logs into the first one.
+     *
+     * @return the merged log
+     */
+    static MeasurementLog merge(MeasurementLog log, MeasurementLog other) {
+        log.mergeWith(other);
         return log;
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.logging;
+
+import agent.IeposAgent;
+import data.DataType;
+import func.CostFunction;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import protopeer.measurement.Aggregate;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Logs lambda, the global cost and the average local cost of each run after
+ * the last iteration. If the runs are the variants of a lambda sweep (see
+ * {@link experiment.IeposExperiment#runSimulation(util.DirectTreeArchitecture, int, int, int, java.util.function.BiFunction)}),
+ * the output is the tradeoff between global and local cost, one line per
+ * lambda.
+ *
+ * @author Peter
+ */
+public class ParetoLogger<V extends DataType<V>> extends AgentLogger<IeposAgent<V>> {
+
+    private static final int LAMBDA = 0;
+    private static final int GLOBAL_COST = 1;
+    private static final int LOCAL_COST = 2;
+
+    private String filename;
+    private CostFunction<V> globalCostFunc;
+
+    /**
+     * Outputs the costs to std-out.
+     */
+    public ParetoLogger() {
+    }
+
+    /**
+     * Outputs the costs to the specified file.
+     *
+     * @param filename the output file
+     */
+    public ParetoLogger(String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public void init(IeposAgent<V> agent) {
+        globalCostFunc = agent.getGlobalCostFunction();
+    }
+
+    @Override
+    public void log(MeasurementLog log, int epoch, IeposAgent<V> agent) {
+        // the last iteration, also if a termination policy stopped the run early
+        if (!agent.isTerminated() && agent.getIteration() != agent.getNumIterations() - 1) {
+            return;
+        }
+        if (agent.isRepresentative()) {
+            log.log(epoch, new Token(run, LAMBDA), agent.getLambda());
+            log.log(epoch, new Token(run, GLOBAL_COST), globalCostFunc.calcCost(agent.getGlobalResponse()));
+        }
+        log.log(epoch, new Token(run, LOCAL_COST), agent.getSelectedLocalCost());
+    }
+
+    @Override
+    public void print(MeasurementLog log) {
+        if (filename == null) {
+            internalPrint(log, System.out);
+        } else {
+            try (PrintStream out = new PrintStream("output-data/" + filename)) {
+                internalPrint(log, out);
+            } catch (FileNotFoundException ex) {
+                Logger.getLogger(ParetoLogger.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private void internalPrint(MeasurementLog log, PrintStream out) {
+        Set<Integer> runs = new TreeSet<>();
+        for (Object tokenObj : log.getTagsOfType(Token.class)) {
+            runs.add(((Token) tokenObj).run);
+        }
+
+        out.println("lambda,global cost,local cost");
+        for (int run : runs) {
+            out.println(String.format(Locale.US, "%s,%s,%s",
+                    average(log, run, LAMBDA), average(log, run, GLOBAL_COST), average(log, run, LOCAL_COST)));
+        }
+    }
+
+    private static double average(MeasurementLog log, int run, int value) {
+        Aggregate aggregate = log.getAggregate(new Token(run, value));
+        return aggregate == null ? Double.NaN : aggregate.getAverage();
+    }
+
+    private static class Token implements Serializable {
+
+        public int run;
+        public int value;
+
+        public Token(int run, int value) {
+            this.run = run;
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 41 * hash + this.run;
+            hash = 41 * hash + this.value;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Token other = (Token) obj;
+            return this.run == other.run && this.value == other.value;
+        }
+    }
+}
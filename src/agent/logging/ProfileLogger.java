@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.logging;
+
+import agent.Agent;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import protopeer.measurement.MeasurementLog;
+import util.Profiler;
+
+/**
+ * Resets and enables the {@link Profiler} when the agents of a run are
+ * initialized and prints the wall time per phase (count, total, mean, p50, p99
+ * and max) of the last run at the end of the experiment. Afterwards, the
+ * profiler is disabled again. The measurements of the profiler are kept in the
+ * process, not in the log; in live experiments with several processes, only
+ * the phases of the printing process are reported.
+ *
+ * @author Peter
+ */
+public class ProfileLogger extends AgentLogger<Agent> {
+
+    private String filename;
+    // the run the profiler was reset for, shared by the clones of the agents
+    private final AtomicInteger profiledRun = new AtomicInteger(-1);
+
+    /**
+     * Outputs the profile to std-out.
+     */
+    public ProfileLogger() {
+        this(null);
+    }
+
+    /**
+     * Outputs the profile as CSV to output-data/filename.
+     *
+     * @param filename the output file
+     */
+    public ProfileLogger(String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public void init(Agent agent) {
+        if (profiledRun.getAndSet(run) != run) {
+            Profiler.reset();
+            Profiler.setEnabled(true);
+        }
+    }
+
+    @Override
+    public void log(MeasurementLog log, int epoch, Agent agent) {
+    }
+
+    @Override
+    public void print(MeasurementLog log) {
+        if (filename == null) {
+            Profiler.print(System.out);
+        } else {
+            new File("output-data").mkdir();
+            try (PrintStream out = new PrintStream("output-data/" + filename)) {
+                Profiler.writeCsv(out);
+            } catch (FileNotFoundException ex) {
+                Logger.getLogger(ProfileLogger.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        Profiler.setEnabled(false);
+        profiledRun.set(-1);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.logging;
+
+import java.io.Serializable;
+import java.util.SplittableRandom;
+
+/**
+ * Selects the agents and iterations a logger records. Loggers that record
+ * one entry per agent and iteration produce most of the measurements of
+ * large runs; a sampling policy reduces them to a subset. Averages over the
+ * sampled agents estimate the averages over all agents; loggers that support
+ * sampling report the sample sizes along with their results.
+ * <p>
+ * The agent subset is drawn independently for each agent with the given
+ * probability and a fixed seed, so the same agents are sampled in every
+ * iteration, every run and every process. Policies can be combined with
+ * {@link #and(SamplingPolicy)}.
+ *
+ * @author Peter
+ */
+public class SamplingPolicy implements Serializable {
+
+    private static final SamplingPolicy ALL = new SamplingPolicy(1, false, 1.0, 0);
+
+    private final int iterationStep;
+    private final boolean lastIterationOnly;
+    private final double agentFraction;
+    private final long seed;
+
+    private SamplingPolicy(int iterationStep, boolean lastIterationOnly, double agentFraction, long seed) {
+        this.iterationStep = iterationStep;
+        this.lastIterationOnly = lastIterationOnly;
+        this.agentFraction = agentFraction;
+        this.seed = seed;
+    }
+
+    /**
+     * @return a policy that records all agents in all iterations
+     */
+    public static SamplingPolicy all() {
+        return ALL;
+    }
+
+    /**
+     * Records every k-th iteration, starting with the first one, and the last
+     * iteration.
+     *
+     * @param k the distance between two recorded iterations
+     * @return the policy
+     */
+    public static SamplingPolicy everyKthIteration(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        return new SamplingPolicy(k, false, 1.0, 0);
+    }
+
+    /**
+     * @return a policy that records only the last iteration
+     */
+    public static SamplingPolicy lastIteration() {
+        return new SamplingPolicy(1, true, 1.0, 0);
+    }
+
+    /**
+     * Records a random subset of the agents.
+     *
+     * @param fraction the probability that an agent is recorded
+     * @param seed the seed that determines the subset
+     * @return the policy
+     */
+    public static SamplingPolicy randomAgents(double fraction, long seed) {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("fraction must be in (0, 1]: " + fraction);
+        }
+        return new SamplingPolicy(1, false, fraction, seed);
+    }
+
+    /**
+     * Combines two policies; an agent and iteration is recorded if both
+     * policies record it. At most one of the policies may sample agents.
+     *
+     * @param other the other policy
+     * @return the combined policy
+     */
+    public SamplingPolicy and(SamplingPolicy other) {
+        if (agentFraction < 1 && other.agentFraction < 1) {
+            throw new IllegalArgumentException("only one policy may sample agents");
+        }
+        int step = iterationStep / gcd(iterationStep, other.iterationStep) * other.iterationStep;
+        return agentFraction < 1
+                ? new SamplingPolicy(step, lastIterationOnly || other.lastIterationOnly, agentFraction, seed)
+                : new SamplingPolicy(step, lastIterationOnly || other.lastIterationOnly, other.agentFraction, other.seed);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * @return true, if this policy records all agents in all iterations
+     */
+    public boolean isAll() {
+        return iterationStep == 1 && !lastIterationOnly && agentFraction >= 1;
+    }
+
+    /**
+     * @return the probability that an agent is recorded
+     */
+    public double getAgentFraction() {
+        return agentFraction;
+    }
+
+    /**
+     * @param agentId the index of the agent
+     * @return true, if the agent is in the sampled subset
+     */
+    public boolean includesAgent(int agentId) {
+        return agentFraction >= 1 || new SplittableRandom(seed * 0x9E3779B97F4A7C15L + agentId).nextDouble() < agentFraction;
+    }
+
+    /**
+     * @param iteration the iteration
+     * @param numIterations the number of iterations of the run
+     * @return true, if the iteration is recorded
+     */
+    public boolean includesIteration(int iteration, int numIterations) {
+        if (iteration == numIterations - 1) {
+            return true;
+        }
+        return !lastIterationOnly && iteration % iterationStep == 0;
+    }
+}
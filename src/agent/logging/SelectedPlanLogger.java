@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent.logging;
+
+import agent.Agent;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import protopeer.measurement.Aggregate;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Logs the plan each agent selected in its last iteration and writes the
+ * selections of the last run to a file, one line "agent,plan" per agent. The
+ * file can be read with {@link #readSelections(String)} to warm-start a later
+ * run (see {@link agent.IeposAgent#setInitialPlan(int)}).
+ *
+ * @author Peter
+ */
+public class SelectedPlanLogger extends AgentLogger<Agent> {
+
+    private final String filename;
+
+    /**
+     * Writes the selections to output-data/filename.
+     *
+     * @param filename the output file
+     */
+    public SelectedPlanLogger(String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public void init(Agent agent) {
+    }
+
+    @Override
+    public void log(MeasurementLog log, int epoch, Agent agent) {
+        if (agent.getIteration() == agent.getNumIterations() - 1 && agent.getSelectedPlan() != null) {
+            log.log(epoch, new Token(run, agent.getPeer().getIndexNumber()), agent.getSelectedPlan().getIndex());
+        }
+    }
+
+    @Override
+    public void print(MeasurementLog log) {
+        int lastRun = 0;
+        for (Object tokenObj : log.getTagsOfType(Token.class)) {
+            lastRun = Math.max(lastRun, ((Token) tokenObj).run);
+        }
+        List<Token> tokens = new ArrayList<>();
+        for (Object tokenObj : log.getTagsOfType(Token.class)) {
+            if (((Token) tokenObj).run == lastRun) {
+                tokens.add((Token) tokenObj);
+            }
+        }
+
+        // an agent may log its selection in several epochs; keep the latest one
+        Map<Integer, Integer> selections = new TreeMap<>();
+        int maxEpoch = tokens.isEmpty() ? -1 : log.getMaxEpochNumber();
+        int minEpoch = tokens.isEmpty() ? 0 : log.getMinEpochNumber();
+        for (int epoch = maxEpoch; epoch >= minEpoch && selections.size() < tokens.size(); epoch--) {
+            for (Token token : tokens) {
+                if (!selections.containsKey(token.agent)) {
+                    Aggregate aggregate = log.getAggregateByEpochNumber(epoch, token);
+                    if (aggregate.getNumValues() > 0) {
+                        selections.put(token.agent, (int) aggregate.getMax());
+                    }
+                }
+            }
+        }
+
+        new File("output-data").mkdir();
+        try (PrintStream out = new PrintStream("output-data/" + filename)) {
+            for (Map.Entry<Integer, Integer> entry : selections.entrySet()) {
+                out.println(entry.getKey() + "," + entry.getValue());
+            }
+        } catch (FileNotFoundException ex) {
+            Logger.getLogger(SelectedPlanLogger.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Reads the selections written by this logger.
+     *
+     * @param filename the file in output-data
+     * @return the selected plan index per agent
+     */
+    public static Map<Integer, Integer> readSelections(String filename) {
+        Map<Integer, Integer> selections = new TreeMap<>();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get("output-data", filename))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length == 2) {
+                    selections.put(Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim()));
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(SelectedPlanLogger.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return selections;
+    }
+
+    private static class Token implements Serializable {
+
+        int run;
+        int agent;
+
+        public Token(int run, int agent) {
+            this.run = run;
+            this.agent = agent;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 5;
+            hash = 41 * hash + this.run;
+            hash = 41 * hash + this.agent;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final Token other = (Token) obj;
+            if (this.run != other.run) {
+                return false;
+            }
+            if (this.agent != other.agent) {
+                return false;
+            }
+            return true;
+        }
+    }
+}
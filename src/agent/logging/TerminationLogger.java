@@ -19,6 +19,10 @@ package agent.logging;
 
 import func.CostFunction;
 import agent.Agent;
+import agent.MessageCodec;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import protopeer.measurement.Aggregate;
 import protopeer.measurement.MeasurementLog;
 import data.DataType;
@@ -62,7 +66,8 @@ public class TerminationLogger<V extends DataType<V>> extends AgentLogger<Agent<
     @Override
     public void log(MeasurementLog log, int epoch, Agent<V> agent) {
         if (agent.isRepresentative()) {
-            if (agent.getIteration() == 0) {
+            // there is no previous response if the logger starts after iteration 0
+            if (agent.getIteration() == 0 || prevGlobalResponse == null) {
                 index = agent.getIteration() + 1;
                 prevGlobalResponse = agent.getGlobalResponse();
             } else {
@@ -80,6 +85,18 @@ public class TerminationLogger<V extends DataType<V>> extends AgentLogger<Agent<
         }
     }
 
+    @Override
+    public void writeState(ObjectOutputStream out) throws IOException {
+        out.writeInt(index);
+        MessageCodec.writeValue(out, prevGlobalResponse, MessageCodec.Encoding.FLOAT64);
+    }
+
+    @Override
+    public void readState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        index = in.readInt();
+        prevGlobalResponse = MessageCodec.<V>readValue(in);
+    }
+
     @Override
     public void print(MeasurementLog log) {
         for (Object t : log.getTagsOfType(String.class)) {
@@ -19,11 +19,21 @@ package agent.logging;
 
 import agent.Agent;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 import protopeer.measurement.Aggregate;
 import protopeer.measurement.MeasurementLog;
 
 /**
- * Logs the amount of work performed by the agents per iteration.
+ * Logs the amount of work performed by the agents per iteration. If the
+ * agents are sampled, the averages and maxima are taken over the sampled
+ * agents; if the iterations are sampled, the values of the logged iterations
+ * are printed without cumulating them. In both cases, the number of sampled
+ * agents per iteration is printed as well.
  *
  * @author Peter
  */
@@ -35,23 +45,30 @@ public class WorkLogger extends AgentLogger<Agent> {
 
     @Override
     public void log(MeasurementLog log, int epoch, Agent agent) {
+        if (!isSampled(agent)) {
+            return;
+        }
         Token token = new Token(run, agent.getIteration());
         log.log(epoch, "numComputations", token, agent.getNumComputed());
         log.log(epoch, "numTransmitted", token, agent.getNumTransmitted());
         log.log(epoch, "cumComputations", token, agent.getCumComputed());
         log.log(epoch, "cumTransmitted", token, agent.getCumTransmitted());
+        log.log(epoch, "numBytes", token, agent.getNumBytesTransmitted());
+        log.log(epoch, "cumBytes", token, agent.getCumBytesTransmitted());
     }
 
     @Override
     public void print(MeasurementLog log) {
         MeasurementLog log2 = new MeasurementLog();
-        int num = 0;
+        Map<Integer, Integer> samples = new TreeMap<>();
         for (Object tokenObj : log.getTagsOfType(Token.class)) {
             Token token = (Token) tokenObj;
             Aggregate comp = log.getAggregate("numComputations", tokenObj);
             Aggregate trans = log.getAggregate("numTransmitted", tokenObj);
             Aggregate ccomp = log.getAggregate("cumComputations", tokenObj);
             Aggregate ctrans = log.getAggregate("cumTransmitted", tokenObj);
+            Aggregate bytes = log.getAggregate("numBytes", tokenObj);
+            Aggregate cbytes = log.getAggregate("cumBytes", tokenObj);
             log2.log(0, "avgComp", token.iteration, comp.getAverage());
             log2.log(0, "maxComp", token.iteration, comp.getMax());
             log2.log(0, "avgTrans", token.iteration, trans.getAverage());
@@ -60,29 +77,53 @@ public class WorkLogger extends AgentLogger<Agent> {
             log2.log(0, "maxCComp", token.iteration, ccomp.getMax());
             log2.log(0, "avgCTrans", token.iteration, ctrans.getAverage());
             log2.log(0, "maxCTrans", token.iteration, ctrans.getMax());
-            num = Math.max(num, token.iteration);
+            log2.log(0, "avgBytes", token.iteration, bytes.getAverage());
+            log2.log(0, "maxBytes", token.iteration, bytes.getMax());
+            log2.log(0, "avgCBytes", token.iteration, cbytes.getAverage());
+            log2.log(0, "maxCBytes", token.iteration, cbytes.getMax());
+            samples.merge(token.iteration, comp.getNumValues(), Integer::sum);
+        }
+
+        // the logged iterations; all iterations unless they are sampled
+        List<Integer> iterations = new ArrayList<>(samples.keySet());
+        boolean allIterations = iterations.isEmpty() || iterations.get(iterations.size() - 1) == iterations.size() - 1;
+        if (!allIterations) {
+            System.out.println("// per logged iteration, not cumulated");
+            System.out.println("int[] iterations=new int[]{" + join(iterations) + "};");
         }
-        internalPrint(log2, "avgComp", num + 1);
-        internalPrint(log2, "avgCComp", num + 1);
-        internalPrint(log2, "maxComp", num + 1);
-        internalPrint(log2, "maxCComp", num + 1);
-        internalPrint(log2, "avgTrans", num + 1);
-        internalPrint(log2, "avgCTrans", num + 1);
-        internalPrint(log2, "maxTrans", num + 1);
-        internalPrint(log2, "maxCTrans", num + 1);
+        if (!sampling.isAll() || !allIterations) {
+            System.out.println("int[] samples=new int[]{" + join(samples.values()) + "};");
+        }
+        internalPrint(log2, "avgComp", iterations, allIterations);
+        internalPrint(log2, "avgCComp", iterations, allIterations);
+        internalPrint(log2, "maxComp", iterations, allIterations);
+        internalPrint(log2, "maxCComp", iterations, allIterations);
+        internalPrint(log2, "avgTrans", iterations, allIterations);
+        internalPrint(log2, "avgCTrans", iterations, allIterations);
+        internalPrint(log2, "maxTrans", iterations, allIterations);
+        internalPrint(log2, "maxCTrans", iterations, allIterations);
+        internalPrint(log2, "avgBytes", iterations, allIterations);
+        internalPrint(log2, "avgCBytes", iterations, allIterations);
+        internalPrint(log2, "maxBytes", iterations, allIterations);
+        internalPrint(log2, "maxCBytes", iterations, allIterations);
     }
 
-    private void internalPrint(MeasurementLog log, String tag, int numIter) {
+    private void internalPrint(MeasurementLog log, String tag, List<Integer> iterations, boolean cumulate) {
         System.out.print("double[] " + tag + "=new double[]{");
         double cum = 0;
-        for (int i = 0; i < numIter; i++) {
-            cum += log.getAggregate(tag, i).getAverage();
+        for (int i = 0; i < iterations.size(); i++) {
+            double value = log.getAggregate(tag, iterations.get(i)).getAverage();
+            cum = cumulate ? cum + value : value;
             System.out.print((i > 0 ? "," : "") + cum);
         }
         System.out.println("};");
     }
 
-    private class Token implements Serializable {
+    private static String join(Collection<Integer> values) {
+        return values.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private static class Token implements Serializable {
 
         int run;
         int iteration;
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import agent.BruteForceOptimizer;
+import data.Plan;
+import data.Vector;
+import func.CostFunction;
+import func.SqrDistCostFunction;
+import func.StdDevCostFunction;
+import func.VarCostFunction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the branch-and-bound search of the {@link BruteForceOptimizer}
+ * with the unpruned enumeration on random small instances. The plans have
+ * small integer values, so many instances have ties and optima with a cost of
+ * exactly zero. Both searches must return the same cost, and the selections
+ * of the pruned search must have this cost. Among ties, the two searches may
+ * select different combinations, as they search the agents in a different
+ * order. The first instance is a fixed one with an optimum of zero.
+ * Exits with status 1 if any instance differs.
+ *
+ * Usage: BruteForcePruningCheck [numInstances] [seed]
+ *
+ * @author Peter
+ */
+public class BruteForcePruningCheck {
+
+    private static final int[][][] ZERO_OPTIMUM = {
+        {{0, 2, 2}, {1, 0, 1}, {1, 0, 2}, {0, 1, 0}},
+        {{2, 0, 0}, {0, 1, 2}, {0, 0, 1}, {2, 1, 1}},
+        {{2, 0, 0}, {1, 2, 1}},
+        {{1, 0, 2}},
+        {{2, 0, 0}},
+        {{2, 2, 0}, {0, 0, 2}, {2, 1, 1}, {0, 0, 2}}};
+
+    public static void main(String[] args) {
+        int numInstances = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+        Random random = new Random(seed);
+        int numFailed = 0;
+        for (int instance = 0; instance < numInstances; instance++) {
+            List<List<Plan<Vector>>> plansPerAgent = instance == 0 ? toPlans(ZERO_OPTIMUM) : randomInstance(random);
+            int numDimensions = plansPerAgent.get(0).get(0).getValue().getNumDimensions();
+            List<CostFunction<Vector>> costFunctions = new ArrayList<>();
+            costFunctions.add(new VarCostFunction());
+            costFunctions.add(new StdDevCostFunction());
+            costFunctions.add(new SqrDistCostFunction(randomVector(numDimensions, 2 * plansPerAgent.size(), random)));
+
+            for (CostFunction<Vector> costFunction : costFunctions) {
+                BruteForceOptimizer optimizer = new BruteForceOptimizer(costFunction);
+                BruteForceOptimizer.Solution pruned = optimizer.optimize(plansPerAgent);
+                optimizer.setPruning(false);
+                BruteForceOptimizer.Solution enumerated = optimizer.optimize(plansPerAgent);
+
+                if (pruned.getCost() != enumerated.getCost()
+                        || costFunction.calcCost(sum(plansPerAgent, pruned.getSelections())) != pruned.getCost()) {
+                    numFailed++;
+                    System.out.println("instance " + instance + ", " + costFunction + ": pruned "
+                            + pruned.getCost() + " " + Arrays.toString(pruned.getSelections()) + ", enumerated "
+                            + enumerated.getCost() + " " + Arrays.toString(enumerated.getSelections()));
+                    System.out.println("  plans " + toString(plansPerAgent));
+                }
+            }
+        }
+        System.out.println(numFailed + " of " + 3 * numInstances + " searches differ");
+        if (numFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static List<List<Plan<Vector>>> randomInstance(Random random) {
+        int numAgents = 1 + random.nextInt(6);
+        int numDimensions = 2 + random.nextInt(3);
+        int[][][] values = new int[numAgents][][];
+        for (int i = 0; i < numAgents; i++) {
+            values[i] = new int[1 + random.nextInt(4)][numDimensions];
+            for (int[] plan : values[i]) {
+                for (int d = 0; d < numDimensions; d++) {
+                    plan[d] = random.nextInt(3);
+                }
+            }
+        }
+        return toPlans(values);
+    }
+
+    private static List<List<Plan<Vector>>> toPlans(int[][][] values) {
+        List<List<Plan<Vector>>> plansPerAgent = new ArrayList<>();
+        for (int[][] agentValues : values) {
+            List<Plan<Vector>> plans = new ArrayList<>();
+            for (int p = 0; p < agentValues.length; p++) {
+                Vector vector = new Vector(agentValues[p].length);
+                for (int d = 0; d < agentValues[p].length; d++) {
+                    vector.setValue(d, agentValues[p][d]);
+                }
+                Plan<Vector> plan = new Plan<>(vector);
+                plan.setIndex(p);
+                plans.add(plan);
+            }
+            plansPerAgent.add(plans);
+        }
+        return plansPerAgent;
+    }
+
+    private static Vector sum(List<List<Plan<Vector>>> plansPerAgent, int[] selections) {
+        Vector sum = plansPerAgent.get(0).get(0).getValue().cloneNew();
+        for (int i = 0; i < selections.length; i++) {
+            sum.add(plansPerAgent.get(i).get(selections[i]).getValue());
+        }
+        return sum;
+    }
+
+    private static String toString(List<List<Plan<Vector>>> plansPerAgent) {
+        StringBuilder out = new StringBuilder();
+        for (List<Plan<Vector>> plans : plansPerAgent) {
+            out.append(out.length() == 0 ? "{" : ", {");
+            for (int p = 0; p < plans.size(); p++) {
+                out.append(p == 0 ? "" : ",").append(plans.get(p).getValue());
+            }
+            out.append("}");
+        }
+        return out.toString();
+    }
+
+    private static Vector randomVector(int numDimensions, int bound, Random random) {
+        Vector vector = new Vector(numDimensions);
+        for (int d = 0; d < numDimensions; d++) {
+            vector.setValue(d, random.nextInt(bound + 1));
+        }
+        return vector;
+    }
+}
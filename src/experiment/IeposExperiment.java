@@ -18,19 +18,31 @@
 package experiment;
 
 import agent.Agent;
+import agent.Checkpoint;
 import agent.IeposAgent;
+import agent.IterativeTreeAgent;
 import agent.logging.AgentLoggingProvider;
+import agent.logging.LoggingProvider;
 import data.Plan;
 import data.Vector;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import protopeer.Experiment;
 import protopeer.Peer;
 import protopeer.PeerFactory;
 import protopeer.SimulatedExperiment;
+import protopeer.time.Clock;
+import protopeer.time.Timer;
 import protopeer.util.quantities.Time;
+import util.DirectTreeArchitecture;
 import util.TreeArchitecture;
 
 /**
@@ -39,8 +51,11 @@ import util.TreeArchitecture;
  */
 public class IeposExperiment extends SimulatedExperiment {
     public static void runSimulation(int numChildren, int numIterations, int numAgents, Function<Integer, Agent> createAgent) {
+        runSimulation(new DirectTreeArchitecture(numChildren), numIterations, numAgents, createAgent);
+    }
+
+    public static void runSimulation(TreeArchitecture architecture, int numIterations, int numAgents, Function<Integer, Agent> createAgent) {
         SimulatedExperiment experiment = new SimulatedExperiment() {};
-        TreeArchitecture architecture = new TreeArchitecture(numChildren);
        
         SimulatedExperiment.initEnvironment();
         experiment.init();
@@ -62,4 +77,112 @@ public class IeposExperiment extends SimulatedExperiment {
 
         experiment.runSimulation(Time.inSeconds(3 + numIterations));
     }
+
+    /**
+     * Runs several variants of an experiment, e.g. a sweep over lambda, in one
+     * simulation. Every peer hosts one agent per variant and the agents of a
+     * variant only exchange messages on their own channel (see
+     * {@link IterativeTreeAgent#setChannel(int)}); the peers, the tree and the
+     * event loop are shared. The tree is computed once, so the ranks must not
+     * depend on the variant. The agents of a variant should log with the
+     * variant as run, which yields one log with all variants.
+     *
+     * @param architecture the tree architecture
+     * @param numIterations the number of iterations
+     * @param numAgents the number of agents per variant
+     * @param numVariants the number of variants
+     * @param createAgent creates the agent with the given index and variant
+     */
+    public static void runSimulation(DirectTreeArchitecture architecture, int numIterations, int numAgents, int numVariants,
+            BiFunction<Integer, Integer, IterativeTreeAgent<?, ?, ?>> createAgent) {
+        SimulatedExperiment experiment = new SimulatedExperiment() {};
+        SimulatedExperiment.initEnvironment();
+        experiment.init();
+        experiment.initPeers(0, numAgents, (int peerIndex, Experiment e) -> {
+            Peer newPeer = new Peer(peerIndex);
+            for (int variant = 0; variant < numVariants; variant++) {
+                IterativeTreeAgent<?, ?, ?> newAgent = createAgent.apply(peerIndex, variant);
+                newAgent.setChannel(variant);
+                architecture.addPeerlets(newPeer, newAgent, peerIndex, numAgents);
+            }
+            return newPeer;
+        });
+        experiment.startPeers(0, numAgents);
+
+        experiment.runSimulation(Time.inSeconds(3 + numIterations));
+    }
+
+    /**
+     * Runs the simulation and writes a checkpoint of all agents and the log
+     * after every checkpointInterval iterations. If the checkpoint file
+     * exists, the simulation continues from it with the next iteration and
+     * produces the same results as an uninterrupted run. The agents must be
+     * IeposAgents with timer-driven iterations and in-memory logging, and the
+     * logging provider must have the same loggers as in the interrupted run;
+     * see {@link Checkpoint} for the supported loggers.
+     *
+     * @param architecture the tree architecture
+     * @param numIterations the number of iterations
+     * @param numAgents the number of agents
+     * @param createAgent creates the agent with the given index
+     * @param loggingProvider the logging provider of the agents
+     * @param checkpoint the checkpoint file
+     * @param checkpointInterval the number of iterations between checkpoints
+     */
+    public static void runSimulation(TreeArchitecture architecture, int numIterations, int numAgents, Function<Integer, Agent> createAgent,
+            LoggingProvider<?> loggingProvider, File checkpoint, int checkpointInterval) {
+        Checkpoint resumeFrom = null;
+        if (checkpoint.exists()) {
+            try {
+                resumeFrom = Checkpoint.read(checkpoint);
+            } catch (IOException ex) {
+                Logger.getLogger(IeposExperiment.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        int firstIteration = resumeFrom == null ? 0 : resumeFrom.getIteration() + 1;
+        if (resumeFrom != null && resumeFrom.getLog() != null) {
+            loggingProvider.addLog(resumeFrom.getLog());
+        }
+
+        List<IeposAgent<?>> agents = new ArrayList<>();
+        Checkpoint restore = resumeFrom;
+        Function<Integer, Agent> createRestoredAgent = idx -> {
+            IeposAgent<?> agent = (IeposAgent<?>) createAgent.apply(idx);
+            if (restore != null) {
+                restore.restore(agent, idx);
+            }
+            agents.add(agent);
+            return agent;
+        };
+
+        SimulatedExperiment experiment = new SimulatedExperiment() {};
+        SimulatedExperiment.initEnvironment();
+        experiment.init();
+        experiment.initPeers(0, numAgents, (int peerIndex, Experiment e) -> {
+            Agent newAgent = createRestoredAgent.apply(peerIndex);
+            Peer newPeer = new Peer(peerIndex);
+            architecture.addPeerlets(newPeer, newAgent, peerIndex, numAgents);
+            return newPeer;
+        });
+        experiment.startPeers(0, numAgents);
+
+        // the phase starts after 3 s and runs one iteration per second;
+        // checkpoints are taken halfway between two iterations
+        Clock clock = agents.get(0).getPeer().getClock();
+        for (int i = firstIteration; i < numIterations - 1; i++) {
+            if ((i + 1) % checkpointInterval == 0) {
+                Timer timer = clock.createNewTimer();
+                timer.addTimerListener((Timer t) -> {
+                    try {
+                        Checkpoint.write(checkpoint, agents, loggingProvider.snapshotLog());
+                    } catch (IOException ex) {
+                        Logger.getLogger(IeposExperiment.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                });
+                timer.schedule(Time.inMilliseconds(1000 * (3 + i - firstIteration) + 500));
+            }
+        }
+
+        experiment.runSimulation(Time.inSeconds(3 + numIterations - firstIteration));
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import agent.IeposAgent;
+import agent.IeposPlanSelector;
+import agent.dataset.Dataset;
+import agent.dataset.GaussianDataset;
+import agent.logging.LoggingProvider;
+import agent.logging.ParetoLogger;
+import data.Vector;
+import func.IndexCostFunction;
+import func.VarCostFunction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import util.DirectTreeArchitecture;
+
+/**
+ * Sweeps lambda, the tradeoff between global and local cost, on a Gaussian
+ * dataset and prints the global and the average local cost after the last
+ * iteration for each lambda. All lambdas run in one simulation: each peer
+ * hosts one agent per lambda, and the agents of a peer share the plans and
+ * their local costs and ranks, which are computed once. The agents of a peer
+ * use the same seed for all lambdas, so each lambda yields the same result
+ * as a separate run.
+ *
+ * Usage: LambdaSweepExperiment [numAgents] [numPlans] [numDimensions]
+ * [numChildren] [numIterations] [lambdas] [seed]
+ *
+ * @author Peter
+ */
+public class LambdaSweepExperiment {
+
+    public static void main(String[] args) {
+        int numAgents = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int numPlans = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int numDimensions = args.length > 2 ? Integer.parseInt(args[2]) : 24;
+        int numChildren = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int numIterations = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        double[] lambdas = args.length > 5 ? parseDoubles(args[5]) : new double[]{0, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1};
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 0;
+
+        Random random = new Random(seed);
+        Dataset<Vector> dataset = new GaussianDataset(numPlans, numDimensions, 0, 1, random);
+        VarCostFunction globalCostFunc = new VarCostFunction();
+        IndexCostFunction localCostFunc = new IndexCostFunction();
+        LoggingProvider<IeposAgent<Vector>> loggingProvider = new LoggingProvider<>();
+        loggingProvider.add(new ParetoLogger<>());
+
+        long[] seeds = new long[numAgents];
+        for (int i = 0; i < numAgents; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        // the agent of the first lambda on the current peer, which computes
+        // the order and the local costs of the plans for all lambdas
+        List<IeposAgent<Vector>> planSource = new ArrayList<>();
+        planSource.add(null);
+
+        long start = System.nanoTime();
+        IeposExperiment.runSimulation(new DirectTreeArchitecture(numChildren), numIterations, numAgents, lambdas.length, (agentIdx, variant) -> {
+            IeposAgent<Vector> agent;
+            if (variant == 0) {
+                agent = new IeposAgent<>(
+                        numIterations,
+                        dataset.getPlans(agentIdx),
+                        globalCostFunc,
+                        localCostFunc,
+                        loggingProvider.getAgentLoggingProvider(agentIdx, variant),
+                        seeds[agentIdx]);
+                planSource.set(0, agent);
+            } else {
+                agent = new IeposAgent<>(
+                        numIterations,
+                        planSource.get(0),
+                        globalCostFunc,
+                        loggingProvider.getAgentLoggingProvider(agentIdx, variant),
+                        seeds[agentIdx]);
+            }
+            agent.setLambda(lambdas[variant]);
+            agent.setPlanSelector(new IeposPlanSelector<>());
+            return agent;
+        });
+        double time = (System.nanoTime() - start) / 1e9;
+
+        loggingProvider.print();
+        System.out.println(String.format(Locale.US, "%d lambdas in %.2f s", lambdas.length, time));
+    }
+
+    private static double[] parseDoubles(String list) {
+        String[] fields = list.split(",");
+        double[] values = new double[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Double.parseDouble(fields[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import agent.IeposAgent;
+import agent.dataset.Dataset;
+import agent.dataset.GaussianDataset;
+import agent.logging.AgentLoggingProvider;
+import agent.logging.GlobalCostLogger;
+import agent.logging.LoggingProvider;
+import agent.logging.WorkLogger;
+import data.Plan;
+import data.Vector;
+import func.IndexCostFunction;
+import func.VarCostFunction;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import protopeer.Experiment;
+import protopeer.LiveExperiment;
+import protopeer.MainConfiguration;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.measurement.MeasurementLog;
+import protopeer.network.NetworkAddress;
+import protopeer.network.NetworkInterfaceFactory;
+import protopeer.network.mina.MinaAddress;
+import protopeer.network.mina.MinaNetworkInterfaceFactory;
+import util.DirectTreeArchitecture;
+import util.LocalNetworkInterfaceFactory;
+import util.TreeArchitecture;
+
+/**
+ * Runs a live experiment on the local machine. The launcher starts one process
+ * per block of agents; each process hosts many agents. Agents in the same
+ * process exchange messages by reference via a
+ * {@link LocalNetworkInterfaceFactory}; only messages to other processes are
+ * serialized and sent over loopback through the gateway of the destination
+ * process. Agent i is addressed as port {@code basePort + i}; the gateway of
+ * process p listens on port {@code basePort + numAgents + p}.
+ * <p>
+ * Each process connects to a collector socket of the launcher once its peers
+ * are initialized. When all processes are connected, the launcher releases
+ * them at the same time. A process sends its measurement log back as soon as
+ * all of its agents completed their last iteration; the launcher merges the
+ * logs as they arrive. The agents iterate event-driven, so the experiment
+ * takes as long as the computation and not a fixed amount of time.
+ *
+ * Usage: LocalLiveExperiment [numAgents] [agentsPerProcess] [numIterations]
+ * [basePort]
+ *
+ * @author Peter
+ */
+public class LocalLiveExperiment extends LiveExperiment {
+
+    private static final int NUM_PLANS = 16;
+    private static final int NUM_DIMENSIONS = 100;
+    private static final int NUM_CHILDREN = 2;
+    private static final long SEED = 0;
+    private static final long TIMEOUT_SECONDS = 300;
+
+    private final int basePort;
+    private final int numAgents;
+    private final int agentsPerProcess;
+    private final int process;
+
+    public LocalLiveExperiment(int basePort, int numAgents, int agentsPerProcess, int process) {
+        this.basePort = basePort;
+        this.numAgents = numAgents;
+        this.agentsPerProcess = agentsPerProcess;
+        this.process = process;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("worker")) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]), Integer.parseInt(args[5]), Integer.parseInt(args[6]));
+            return;
+        }
+
+        int numAgents = args.length > 0 ? Integer.parseInt(args[0]) : 31;
+        int agentsPerProcess = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int numIterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int basePort = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+        launch(numAgents, agentsPerProcess, numIterations, basePort);
+    }
+
+    /**
+     * Starts the worker processes, waits until all of them completed and
+     * prints the merged log.
+     */
+    private static void launch(int numAgents, int agentsPerProcess, int numIterations, int basePort) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        LoggingProvider<IeposAgent<Vector>> loggingProvider = createLoggingProvider();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+
+        List<Process> processes = new ArrayList<>();
+        List<Socket> workers = new ArrayList<>();
+        try (ServerSocket collector = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            collector.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            for (int first = 0; first < numAgents; first += agentsPerProcess) {
+                ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, LocalLiveExperiment.class.getName(), "worker",
+                        Integer.toString(first), Integer.toString(agentsPerProcess), Integer.toString(numAgents),
+                        Integer.toString(numIterations), Integer.toString(basePort), Integer.toString(collector.getLocalPort()));
+                builder.inheritIO();
+                processes.add(builder.start());
+            }
+
+            // wait until all peers are initialized, then release all processes
+            for (int i = 0; i < processes.size(); i++) {
+                Socket worker = collector.accept();
+                worker.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+                workers.add(worker);
+            }
+            System.out.println(processes.size() + " processes ready after " + (System.currentTimeMillis() - start) + " ms");
+            for (Socket worker : workers) {
+                worker.getOutputStream().write(1);
+                worker.getOutputStream().flush();
+            }
+
+            // read the logs concurrently and merge them in the order in which
+            // the processes finish
+            ExecutorService readers = Executors.newFixedThreadPool(workers.size());
+            try {
+                CompletionService<MeasurementLog> logs = new ExecutorCompletionService<>(readers);
+                for (Socket worker : workers) {
+                    logs.submit(() -> {
+                        try (Socket socket = worker) {
+                            return (MeasurementLog) new ObjectInputStream(socket.getInputStream()).readObject();
+                        }
+                    });
+                }
+                for (int i = 0; i < workers.size(); i++) {
+                    loggingProvider.addLog(logs.take().get());
+                }
+            } finally {
+                readers.shutdownNow();
+            }
+        } catch (IOException | ExecutionException ex) {
+            Logger.getLogger(LocalLiveExperiment.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            for (Process process : processes) {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            }
+        }
+
+        System.out.println(numAgents + " agents in " + processes.size() + " processes finished after "
+                + (System.currentTimeMillis() - start) + " ms");
+        loggingProvider.print();
+    }
+
+    /**
+     * Runs a block of agents and reports the log to the launcher.
+     */
+    private static void runWorker(int first, int agentsPerProcess, int numAgents, int numIterations, int basePort, int collectorPort) throws Exception {
+        int count = Math.min(agentsPerProcess, numAgents - first);
+        Experiment.initEnvironment();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        synchronized (MainConfiguration.getSingleton()) {
+            MainConfiguration.getSingleton().peerIndex = first;
+            MainConfiguration.getSingleton().peerIP = loopback;
+            MainConfiguration.getSingleton().peerPort = basePort + first;
+            MainConfiguration.getSingleton().peerZeroIP = loopback;
+            MainConfiguration.getSingleton().peerZeroPort = basePort;
+        }
+
+        LocalLiveExperiment exp = new LocalLiveExperiment(basePort, numAgents, agentsPerProcess, first / agentsPerProcess);
+        exp.init();
+
+        LoggingProvider<IeposAgent<Vector>> loggingProvider = createLoggingProvider();
+        Dataset<Vector> dataset = new GaussianDataset(NUM_PLANS, NUM_DIMENSIONS, 0, 1, new Random(SEED));
+        TreeArchitecture architecture = new DirectTreeArchitecture(NUM_CHILDREN);
+        CountDownLatch completed = new CountDownLatch(count);
+
+        PeerFactory peerFactory = (int peerIndex, Experiment e) -> {
+            List<Plan<Vector>> possiblePlans = dataset.getPlans(peerIndex);
+            AgentLoggingProvider agentLP = loggingProvider.getAgentLoggingProvider(peerIndex, 0);
+
+            IeposAgent<Vector> newAgent = new IeposAgent<>(numIterations, possiblePlans, new VarCostFunction(), new IndexCostFunction(), agentLP, SEED + peerIndex);
+            newAgent.setEventDriven(true);
+            newAgent.setCompletionListener(completed::countDown);
+            Peer newPeer = new Peer(peerIndex);
+            architecture.addPeerlets(newPeer, newAgent, peerIndex, numAgents);
+            return newPeer;
+        };
+        exp.initPeers(first, count, peerFactory);
+
+        try (Socket launcher = new Socket(loopback, collectorPort)) {
+            launcher.getInputStream().read();
+            exp.startPeers(first, count);
+
+            if (!completed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Logger.getLogger(LocalLiveExperiment.class.getName()).log(Level.SEVERE,
+                        "agents {0} to {1} did not complete", new Object[]{first, first + count - 1});
+            }
+            ObjectOutputStream out = new ObjectOutputStream(launcher.getOutputStream());
+            out.writeObject(loggingProvider.getLog());
+            out.flush();
+        }
+        System.exit(0);
+    }
+
+    private static LoggingProvider<IeposAgent<Vector>> createLoggingProvider() {
+        LoggingProvider<IeposAgent<Vector>> loggingProvider = new LoggingProvider<>();
+        loggingProvider.add(new GlobalCostLogger());
+        loggingProvider.add(new WorkLogger());
+        return loggingProvider;
+    }
+
+    @Override
+    public NetworkAddress getAddressToBindTo(int peerIndex) {
+        return new MinaAddress(InetAddress.getLoopbackAddress(), basePort + peerIndex);
+    }
+
+    @Override
+    public NetworkInterfaceFactory createNetworkInterfaceFactory() {
+        return new LocalNetworkInterfaceFactory(Runtime.getRuntime().availableProcessors(),
+                new MinaNetworkInterfaceFactory(getRootMeasurementLogger()), gatewayAddress(process), this::gatewayOf);
+    }
+
+    private NetworkAddress gatewayAddress(int process) {
+        return new MinaAddress(InetAddress.getLoopbackAddress(), basePort + numAgents + process);
+    }
+
+    private NetworkAddress gatewayOf(NetworkAddress address) {
+        int peerIndex = ((MinaAddress) address).getPort() - basePort;
+        return gatewayAddress(peerIndex / agentsPerProcess);
+    }
+}
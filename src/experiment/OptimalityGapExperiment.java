@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import agent.Agent;
+import agent.BruteForceOptimizer;
+import agent.IeposAgent;
+import agent.IeposPlanSelector;
+import agent.dataset.Dataset;
+import agent.dataset.GaussianDataset;
+import agent.logging.LoggingProvider;
+import data.Vector;
+import func.PlanScoreCostFunction;
+import func.VarCostFunction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the global cost that I-EPOS reaches on a small Gaussian dataset
+ * with the optimal cost found by the {@link BruteForceOptimizer}.
+ *
+ * Usage: OptimalityGapExperiment [numAgents] [numPlans] [numDimensions]
+ * [numChildren] [numIterations] [seed]
+ *
+ * @author Peter
+ */
+public class OptimalityGapExperiment {
+
+    public static void main(String[] args) {
+        int numAgents = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int numPlans = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int numDimensions = args.length > 2 ? Integer.parseInt(args[2]) : 24;
+        int numChildren = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int numIterations = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+        Random random = new Random(seed);
+        Dataset<Vector> dataset = new GaussianDataset(numPlans, numDimensions, 0, 1, random);
+        VarCostFunction globalCostFunc = new VarCostFunction();
+        PlanScoreCostFunction localCostFunc = new PlanScoreCostFunction();
+        LoggingProvider<IeposAgent<Vector>> loggingProvider = new LoggingProvider<>();
+
+        List<IeposAgent<Vector>> agents = new ArrayList<>();
+        long start = System.nanoTime();
+        IeposExperiment.runSimulation(numChildren, numIterations, numAgents, agentIdx -> {
+            IeposAgent<Vector> agent = new IeposAgent<>(
+                    numIterations,
+                    dataset.getPlans(agentIdx),
+                    globalCostFunc,
+                    localCostFunc,
+                    loggingProvider.getAgentLoggingProvider(agentIdx, 0),
+                    random.nextLong());
+            agent.setPlanSelector(new IeposPlanSelector<>());
+            agents.add(agent);
+            return (Agent) agent;
+        });
+        double ieposTime = (System.nanoTime() - start) / 1e9;
+        double ieposCost = Double.NaN;
+        for (IeposAgent<Vector> agent : agents) {
+            if (agent.isRoot()) {
+                ieposCost = globalCostFunc.calcCost(agent.getGlobalResponse());
+            }
+        }
+
+        start = System.nanoTime();
+        BruteForceOptimizer.Solution optimum = new BruteForceOptimizer(globalCostFunc).optimize(dataset, numAgents);
+        double optimumTime = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(Locale.US, "I-EPOS:  cost %.6f in %.2f s", ieposCost, ieposTime));
+        System.out.println(String.format(Locale.US, "optimum: cost %.6f in %.2f s (%d of %.0f combinations evaluated)",
+                optimum.getCost(), optimumTime, optimum.getNumEvaluated(), Math.pow(numPlans, numAgents)));
+        System.out.println(String.format(Locale.US, "gap:     %.2f%%", 100 * (ieposCost - optimum.getCost()) / optimum.getCost()));
+    }
+}
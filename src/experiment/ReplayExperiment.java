@@ -20,7 +20,7 @@ import agent.logging.TerminationLogger;
 public class ReplayExperiment {
 
     public static void main(String[] args) {
-        String filename = "simple.log";
+        String filename = args.length > 0 ? args[0] : "simple.log";
 
         LoggingProvider loggingProvider = new LoggingProvider();
         loggingProvider.add(new FileReader(filename));
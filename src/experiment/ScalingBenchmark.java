@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import agent.Agent;
+import agent.IeposAdaptiveGradientPlanSelector;
+import agent.IeposAgent;
+import agent.IeposGlobalGradientPlanSelector;
+import agent.IeposIndividualGradientPlanSelector;
+import agent.IeposPlanSelector;
+import agent.PlanSelector;
+import agent.dataset.Dataset;
+import agent.dataset.GaussianDataset;
+import agent.logging.LoggingProvider;
+import data.Vector;
+import func.PlanScoreCostFunction;
+import func.VarCostFunction;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs whole I-EPOS simulations with Gaussian datasets over a grid of agent
+ * counts, fan-outs, plan counts, dimensions and plan selectors, and writes
+ * one CSV line per run with the wall time, the time per iteration, the peak
+ * heap, the allocated bytes and the global cost after the last iteration.
+ * Every run uses the same seed, so repeated invocations simulate the same
+ * runs and the results of different versions can be compared line by line.
+ * <p>
+ * The wall time includes the creation of the agents and their plans. The
+ * peak heap is the sum of the peak usage of the heap memory pools during the
+ * run; the allocated bytes are counted for all threads that are alive at
+ * the end of the run.
+ * <p>
+ * Usage: ScalingBenchmark [key=value...] with the keys (defaults in
+ * brackets)
+ * <pre>
+ * agents      the numbers of agents [100,1000,10000,100000]
+ * children    the numbers of children per agent [2,4]
+ * plans       the numbers of plans per agent [16]
+ * dims        the numbers of dimensions [24]
+ * selectors   iepos, global-gradient, individual-gradient or adaptive-gradient [iepos]
+ * iterations  the number of iterations [20]
+ * lambda      the weight of the local cost [0]
+ * repetitions the number of runs per configuration [1]
+ * seed        the seed of the datasets and agents [0]
+ * out         the CSV file [output-data/scaling.csv]
+ * </pre>
+ * Lists are comma separated. 10^5 agents with 16 plans of 24 dimensions
+ * need about 2 GB of heap (-Xmx2g), larger plans proportionally more.
+ *
+ * @author Peter
+ */
+public class ScalingBenchmark {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        Map<String, String> params = new HashMap<>();
+        params.put("agents", "100,1000,10000,100000");
+        params.put("children", "2,4");
+        params.put("plans", "16");
+        params.put("dims", "24");
+        params.put("selectors", "iepos");
+        params.put("iterations", "20");
+        params.put("lambda", "0");
+        params.put("repetitions", "1");
+        params.put("seed", "0");
+        params.put("out", "output-data/scaling.csv");
+        for (String arg : args) {
+            int idx = arg.indexOf('=');
+            if (idx < 0 || !params.containsKey(arg.substring(0, idx))) {
+                throw new IllegalArgumentException("unknown argument: " + arg);
+            }
+            params.put(arg.substring(0, idx), arg.substring(idx + 1));
+        }
+
+        int numIterations = Integer.parseInt(params.get("iterations"));
+        double lambda = Double.parseDouble(params.get("lambda"));
+        int repetitions = Integer.parseInt(params.get("repetitions"));
+        long seed = Long.parseLong(params.get("seed"));
+        File outFile = new File(params.get("out"));
+        if (outFile.getParentFile() != null) {
+            outFile.getParentFile().mkdirs();
+        }
+
+        String header = "agents,children,plans,dims,selector,iterations,repetition,wall ms,ms/iteration,peak heap MB,allocated MB,global cost";
+        try (PrintStream out = new PrintStream(outFile)) {
+            out.println(header);
+            System.out.println(header);
+            for (int numAgents : parseInts(params.get("agents"))) {
+                for (int numChildren : parseInts(params.get("children"))) {
+                    for (int numPlans : parseInts(params.get("plans"))) {
+                        for (int numDims : parseInts(params.get("dims"))) {
+                            for (String selector : params.get("selectors").split(",")) {
+                                for (int rep = 0; rep < repetitions; rep++) {
+                                    Result result = run(numAgents, numChildren, numPlans, numDims, selector.trim(),
+                                            numIterations, lambda, seed);
+                                    String line = String.format(Locale.US, "%d,%d,%d,%d,%s,%d,%d,%.1f,%.3f,%.1f,%.1f,%.6f",
+                                            numAgents, numChildren, numPlans, numDims, selector.trim(), numIterations, rep,
+                                            result.wallNanos / 1e6, result.wallNanos / 1e6 / numIterations,
+                                            result.peakHeap / 1e6, result.allocated / 1e6, result.globalCost);
+                                    out.println(line);
+                                    out.flush();
+                                    System.out.println(line);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Result run(int numAgents, int numChildren, int numPlans, int numDims, String selector,
+            int numIterations, double lambda, long seed) {
+        Random random = new Random(seed);
+        Dataset<Vector> dataset = new GaussianDataset(numPlans, numDims, 0, 1, random);
+        VarCostFunction globalCostFunc = new VarCostFunction();
+        PlanScoreCostFunction localCostFunc = new PlanScoreCostFunction();
+        PlanSelector<IeposAgent<Vector>, Vector> planSelector = createPlanSelector(selector);
+        LoggingProvider<IeposAgent<Vector>> loggingProvider = new LoggingProvider<>();
+
+        List<IeposAgent<Vector>> agents = new ArrayList<>();
+        long[] seeds = new long[numAgents];
+        for (int i = 0; i < numAgents; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+
+        IeposExperiment.runSimulation(numChildren, numIterations, numAgents, agentIdx -> {
+            IeposAgent<Vector> agent = new IeposAgent<>(
+                    numIterations,
+                    dataset.getPlans(agentIdx),
+                    globalCostFunc,
+                    localCostFunc,
+                    loggingProvider.getAgentLoggingProvider(agentIdx, 0),
+                    seeds[agentIdx]);
+            agent.setLambda(lambda);
+            agent.setPlanSelector(planSelector);
+            agents.add(agent);
+            return (Agent) agent;
+        });
+
+        Result result = new Result();
+        result.wallNanos = System.nanoTime() - start;
+        result.allocated = getAllocatedBytes() - allocatedBefore;
+        for (MemoryPoolMXBean pool : heapPools) {
+            result.peakHeap += pool.getPeakUsage().getUsed();
+        }
+        result.globalCost = Double.NaN;
+        for (IeposAgent<Vector> agent : agents) {
+            if (agent.isRoot()) {
+                result.globalCost = globalCostFunc.calcCost(agent.getGlobalResponse());
+            }
+        }
+        return result;
+    }
+
+    private static PlanSelector<IeposAgent<Vector>, Vector> createPlanSelector(String name) {
+        switch (name) {
+            case "iepos":
+                return new IeposPlanSelector<>();
+            case "global-gradient":
+                return new IeposGlobalGradientPlanSelector();
+            case "individual-gradient":
+                return new IeposIndividualGradientPlanSelector();
+            case "adaptive-gradient":
+                return new IeposAdaptiveGradientPlanSelector();
+            default:
+                throw new IllegalArgumentException("unknown plan selector: " + name);
+        }
+    }
+
+    /**
+     * @return the bytes allocated by all live threads, or -1 if the JVM does
+     * not count allocations
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        long sum = 0;
+        for (long bytes : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            sum += Math.max(0, bytes);
+        }
+        return sum;
+    }
+
+    private static int[] parseInts(String list) {
+        String[] fields = list.split(",");
+        int[] values = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Integer.parseInt(fields[i].trim());
+        }
+        return values;
+    }
+
+    private static class Result {
+
+        long wallNanos;
+        long peakHeap;
+        long allocated;
+        double globalCost;
+    }
+}
@@ -39,6 +39,13 @@ public class SqrDistCostFunction extends DifferentiableCostFunction<Vector> {
         this.target = target;
     }
 
+    /**
+     * @return the target vector
+     */
+    public Vector getTarget() {
+        return target;
+    }
+
     @Override
     public double calcCost(Vector vector) {
         Vector v = vector.cloneThis();
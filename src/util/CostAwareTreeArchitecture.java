@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import agent.Agent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.IntToDoubleFunction;
+import protopeer.Peer;
+
+/**
+ * A tree architecture that places the agents according to the work they
+ * perform per iteration, such that the critical path (the cumulative
+ * computations reported by the WorkLogger) is as short as possible.
+ * <p>
+ * The work of a node is the work of its agent, given by the work model, plus
+ * the aggregation work of its position, which depends on the number of
+ * children. By default, the work of an agent is the number of its plans and
+ * the aggregation work of a node with k children is 2^k, which matches the
+ * computations counted by I-EPOS. The number of dimensions scales both terms
+ * alike and therefore does not change the placement. Measured computations of
+ * a previous run can be used via {@link #measuredWork(Map, BiFunction)}.
+ * <p>
+ * The shape of the tree is the same as for {@link DirectTreeArchitecture}; a
+ * custom parent function must map each position to a smaller position.
+ * The agents with the least work become the inner nodes, assigned level by
+ * level from the root; the remaining agents become the leaves. Within each
+ * level and among the leaves, the agents with the most work are assigned to
+ * the positions whose path to the root carries the least work. If all agents
+ * perform the same work, the resulting tree is the default tree.
+ *
+ * @author Peter
+ */
+public class CostAwareTreeArchitecture extends DirectTreeArchitecture {
+
+    /**
+     * Estimates the work of an agent per iteration, excluding the aggregation
+     * work. The agent is null for peers that are not added to this
+     * architecture.
+     */
+    public BiFunction<Integer, Agent, Double> workModel = (idx, agent) -> agent == null ? 0.0 : (double) agent.getPossiblePlans().size();
+
+    /**
+     * Estimates the aggregation work of a node with the given number of
+     * children.
+     */
+    public IntToDoubleFunction aggregationWork = numChildren -> numChildren == 0 ? 0.0 : Math.pow(2, numChildren);
+
+    private Map<Integer, Double> works = new HashMap<>();
+    private double criticalPath;
+
+    public CostAwareTreeArchitecture(int maxChildren) {
+        super(maxChildren);
+    }
+
+    /**
+     * Creates a work model from measured computations, e.g. the number of
+     * computations for selecting a plan in a previous run.
+     *
+     * @param numComputed the measured work per peer index
+     * @param fallback the work model for peers without a measurement
+     * @return the work model
+     */
+    public static BiFunction<Integer, Agent, Double> measuredWork(Map<Integer, ? extends Number> numComputed, BiFunction<Integer, Agent, Double> fallback) {
+        return (idx, agent) -> {
+            Number measured = numComputed.get(idx);
+            return measured != null ? measured.doubleValue() : fallback.apply(idx, agent);
+        };
+    }
+
+    @Override
+    public void addPeerlets(Peer peer, Agent agent, int peerIndex, int numNodes) {
+        works.put(peerIndex, workModel.apply(peerIndex, agent));
+        super.addPeerlets(peer, agent, peerIndex, numNodes);
+    }
+
+    /**
+     * @return the estimated work on the longest path from a leaf to the root
+     * of the computed tree
+     */
+    public double getCriticalPath() {
+        return criticalPath;
+    }
+
+    @Override
+    protected int[] order(int numNodes) {
+        // the default order of the agents, used to break ties
+        int[] byRank = super.order(numNodes);
+        double[] work = new double[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            Double w = works.get(i);
+            work[i] = w != null ? w : workModel.apply(i, null);
+        }
+        Integer[] agents = Arrays.stream(byRank).boxed().toArray(Integer[]::new);
+        Arrays.sort(agents, Comparator.comparingDouble(i -> work[i]));
+
+        // shape of the tree
+        int[] numChildren = new int[numNodes];
+        int[] depth = new int[numNodes];
+        for (int pos = 1; pos < numNodes; pos++) {
+            numChildren[parent(pos)]++;
+            depth[pos] = depth[parent(pos)] + 1;
+        }
+
+        // group the inner positions by level, followed by all leaves
+        List<List<Integer>> groups = new ArrayList<>();
+        List<Integer> leaves = new ArrayList<>();
+        for (int pos = 0; pos < numNodes; pos++) {
+            if (numChildren[pos] == 0) {
+                leaves.add(pos);
+            } else {
+                while (groups.size() <= depth[pos]) {
+                    groups.add(new ArrayList<>());
+                }
+                groups.get(depth[pos]).add(pos);
+            }
+        }
+        groups.add(leaves);
+
+        int[] order = new int[numNodes];
+        double[] pathWork = new double[numNodes];
+        criticalPath = 0;
+        int next = 0;
+        for (List<Integer> group : groups) {
+            double[] base = new double[numNodes];
+            for (int pos : group) {
+                base[pos] = (pos == 0 ? 0 : pathWork[parent(pos)]) + aggregationWork.applyAsDouble(numChildren[pos]);
+            }
+            Integer[] members = Arrays.copyOfRange(agents, next, next + group.size());
+            next += group.size();
+            Arrays.sort(members, Comparator.comparingDouble(i -> -work[i]));
+            Integer[] positions = group.toArray(new Integer[group.size()]);
+            Arrays.sort(positions, Comparator.comparingDouble(pos -> base[pos]));
+            // agents with equal work keep their default order
+            for (int from = 0, to; from < members.length; from = to) {
+                for (to = from + 1; to < members.length && work[members[to]] == work[members[from]]; to++) {
+                }
+                Arrays.sort(positions, from, to);
+            }
+
+            for (int j = 0; j < positions.length; j++) {
+                int pos = positions[j];
+                order[pos] = members[j];
+                pathWork[pos] = base[pos] + work[members[j]];
+                criticalPath = Math.max(criticalPath, pathWork[pos]);
+            }
+        }
+        return order;
+    }
+
+    @Override
+    public CostAwareTreeArchitecture clone() {
+        CostAwareTreeArchitecture clone = (CostAwareTreeArchitecture) super.clone();
+        clone.works = new HashMap<>();
+        return clone;
+    }
+
+    @Override
+    public String toString() {
+        return "CostAwareTree";
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import agent.Agent;
+import dsutil.protopeer.services.topology.trees.TreeApplicationInterface;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import protopeer.BasePeerlet;
+import protopeer.Experiment;
+import protopeer.Finger;
+import protopeer.Peer;
+import protopeer.RingIdentifier;
+
+/**
+ * A tree architecture that computes the tree up front instead of building it
+ * with the TreeServer/TreeClient protocol. The peers are ordered by their rank
+ * (highest rank first) and each position in this order is assigned a parent
+ * position. By default, this is a balanced tree with {@code maxChildren}
+ * children per node, filled in breadth-first order, which is the tree the
+ * TreeServer builds for {@link tree.BalanceType#WEIGHT_BALANCED} sorted trees.
+ * <p>
+ * The tree view is handed to the agent when its peer starts; no messages are
+ * exchanged. The peers are addressed via
+ * {@link Experiment#getAddressToBindTo(int)}. Ranks of peers that are not
+ * added to this architecture, e.g. peers in other processes, are computed by
+ * the rank generator with a null agent.
+ *
+ * @author Peter
+ */
+public class DirectTreeArchitecture extends TreeArchitecture {
+
+    /**
+     * Maps a position to the position of its parent or to -1 for the root.
+     * Position 0 is the peer with the highest rank. Null means a balanced
+     * k-ary tree.
+     */
+    public IntUnaryOperator parentOf = null;
+
+    private Map<Integer, Double> ranks = new HashMap<>();
+    private int numNodes;
+
+    // the computed tree
+    private Map<Integer, Integer> positions;
+    private int[] peers;
+    private int[] parents;
+    private List<List<Integer>> children;
+
+    public DirectTreeArchitecture(int maxChildren) {
+        super(maxChildren);
+    }
+
+    @Override
+    public void addPeerlets(Peer peer, Agent agent, int peerIndex, int numNodes) {
+        this.numNodes = numNodes;
+        ranks.put(peerIndex, rankGenerator.apply(peerIndex, agent));
+        positions = null;
+
+        peer.setIdentifier(identifier(peerIndex));
+        peer.addPeerlet(new TreeViewPeerlet(agent));
+        peer.addPeerlet(agent);
+    }
+
+    private RingIdentifier identifier(int peerIndex) {
+        return new RingIdentifier(peerIndex / (double) numNodes);
+    }
+
+    private Finger finger(int peerIndex) {
+        return new Finger(Experiment.getSingleton().getAddressToBindTo(peerIndex), identifier(peerIndex));
+    }
+
+    private synchronized void computeTree() {
+        if (positions != null) {
+            return;
+        }
+        peers = order(numNodes);
+        parents = new int[numNodes];
+        children = new ArrayList<>(numNodes);
+        positions = new HashMap<>();
+        for (int pos = 0; pos < numNodes; pos++) {
+            positions.put(peers[pos], pos);
+            children.add(new ArrayList<>());
+        }
+        for (int pos = 0; pos < numNodes; pos++) {
+            parents[pos] = parent(pos);
+            if (parents[pos] >= 0) {
+                children.get(parents[pos]).add(pos);
+            }
+        }
+    }
+
+    /**
+     * Assigns the peers to the positions of the tree.
+     *
+     * @param numNodes the number of peers
+     * @return the peer index for each position
+     */
+    protected int[] order(int numNodes) {
+        Integer[] order = new Integer[numNodes];
+        double[] rank = new double[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            order[i] = i;
+            Double r = ranks.get(i);
+            rank[i] = r != null ? r : rankGenerator.apply(i, null);
+        }
+        Comparator<Integer> byRank = Comparator.comparingDouble(i -> rank[i]);
+        Arrays.sort(order, byRank.reversed());
+        return Arrays.stream(order).mapToInt(i -> i).toArray();
+    }
+
+    /**
+     * @param pos a position in the tree
+     * @return the position of the parent or -1 for the root
+     */
+    protected int parent(int pos) {
+        return parentOf != null ? parentOf.applyAsInt(pos) : (pos == 0 ? -1 : (pos - 1) / maxChildren);
+    }
+
+    private void setTreeView(int peerIndex, TreeApplicationInterface agent) {
+        computeTree();
+        int pos = positions.get(peerIndex);
+        Finger parent = parents[pos] < 0 ? null : finger(peers[parents[pos]]);
+        List<Finger> childFingers = new ArrayList<>();
+        for (int child : children.get(pos)) {
+            childFingers.add(finger(peers[child]));
+        }
+        agent.setTreeView(parent, childFingers);
+    }
+
+    @Override
+    public DirectTreeArchitecture clone() {
+        DirectTreeArchitecture clone = (DirectTreeArchitecture) super.clone();
+        clone.ranks = new HashMap<>();
+        clone.positions = null;
+        return clone;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectTree";
+    }
+
+    private class TreeViewPeerlet extends BasePeerlet {
+
+        private final Agent agent;
+
+        public TreeViewPeerlet(Agent agent) {
+            this.agent = agent;
+        }
+
+        @Override
+        public void start() {
+            if (agent instanceof TreeApplicationInterface) {
+                setTreeView(getPeer().getIndexNumber(), (TreeApplicationInterface) agent);
+            }
+        }
+    }
+}
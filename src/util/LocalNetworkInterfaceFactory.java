@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import protopeer.measurement.MeasurementLogger;
+import protopeer.network.Message;
+import protopeer.network.NetworkAddress;
+import protopeer.network.NetworkInterface;
+import protopeer.network.NetworkInterfaceFactory;
+import protopeer.network.NetworkListener;
+
+/**
+ * Creates network interfaces for many peers that live in the same JVM.
+ * Messages between co-located peers are handed over by reference, without
+ * serialization and without sockets. Messages to peers in other processes are
+ * wrapped in an envelope and sent through a single gateway interface per
+ * process, which unwraps them on the receiving side.
+ * <p>
+ * Messages are delivered by a small number of event loop threads. Each peer is
+ * bound to one event loop, so the messages of a peer are delivered in order
+ * and never concurrently.
+ *
+ * @author Peter
+ */
+public class LocalNetworkInterfaceFactory implements NetworkInterfaceFactory {
+
+    private final Map<NetworkAddress, LocalNetworkInterface> interfaces = new ConcurrentHashMap<>();
+    private final ExecutorService[] eventLoops;
+    private int numInterfaces;
+
+    // remote delivery
+    private final NetworkInterfaceFactory remoteFactory;
+    private final NetworkAddress gatewayAddress;
+    private final Function<NetworkAddress, NetworkAddress> gatewayOf;
+    private NetworkInterface gateway;
+
+    /**
+     * Creates a factory for peers that all live in this JVM.
+     *
+     * @param numEventLoops the number of threads that deliver messages
+     */
+    public LocalNetworkInterfaceFactory(int numEventLoops) {
+        this(numEventLoops, null, null, null);
+    }
+
+    /**
+     * Creates a factory for peers that are distributed over several
+     * processes.
+     *
+     * @param numEventLoops the number of threads that deliver messages
+     * @param remoteFactory creates the gateway interface, e.g. a
+     * MinaNetworkInterfaceFactory
+     * @param gatewayAddress the address of the gateway of this process
+     * @param gatewayOf maps the address of a peer to the gateway address of the
+     * process that hosts it
+     */
+    public LocalNetworkInterfaceFactory(int numEventLoops, NetworkInterfaceFactory remoteFactory, NetworkAddress gatewayAddress, Function<NetworkAddress, NetworkAddress> gatewayOf) {
+        this.eventLoops = new ExecutorService[numEventLoops];
+        for (int i = 0; i < numEventLoops; i++) {
+            String name = "event-loop-" + i;
+            eventLoops[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.remoteFactory = remoteFactory;
+        this.gatewayAddress = gatewayAddress;
+        this.gatewayOf = gatewayOf;
+    }
+
+    @Override
+    public synchronized NetworkInterface createNewNetworkInterface(MeasurementLogger measurementLogger, NetworkAddress address) {
+        if (gateway == null && remoteFactory != null) {
+            gateway = remoteFactory.createNewNetworkInterface(measurementLogger, gatewayAddress);
+            gateway.addNetworkListener(new GatewayListener());
+            gateway.bringUp();
+        }
+        ExecutorService eventLoop = eventLoops[numInterfaces++ % eventLoops.length];
+        return new LocalNetworkInterface(measurementLogger, address, eventLoop);
+    }
+
+    private class LocalNetworkInterface extends NetworkInterface {
+
+        private final ExecutorService eventLoop;
+
+        public LocalNetworkInterface(MeasurementLogger measurementLogger, NetworkAddress address, ExecutorService eventLoop) {
+            super(address, measurementLogger);
+            this.eventLoop = eventLoop;
+        }
+
+        @Override
+        public void bringUp() {
+            interfaces.put(networkAddress, this);
+            super.bringUp();
+        }
+
+        @Override
+        public void bringDown() {
+            interfaces.remove(networkAddress);
+            super.bringDown();
+        }
+
+        @Override
+        public void sendMessage(NetworkAddress destination, Message message) {
+            message.setSourceAddress(networkAddress);
+            LocalNetworkInterface local = interfaces.get(destination);
+            if (local != null) {
+                local.deliver(networkAddress, message.clone());
+            } else if (gateway != null) {
+                gateway.sendMessage(gatewayOf.apply(destination), new Envelope(destination, message));
+            } else {
+                Logger.getLogger(LocalNetworkInterfaceFactory.class.getName()).log(Level.WARNING, "unknown destination {0}", destination);
+                return;
+            }
+            fireMessageSent(destination, message);
+        }
+
+        /**
+         * Sends the message to all co-located peers.
+         */
+        @Override
+        public void broadcastMessage(Message message) {
+            for (NetworkAddress destination : interfaces.keySet()) {
+                if (!destination.equals(networkAddress)) {
+                    sendMessage(destination, message);
+                }
+            }
+        }
+
+        void deliver(NetworkAddress source, Message message) {
+            eventLoop.execute(() -> fireMessageReceived(source, message));
+        }
+    }
+
+    private class GatewayListener implements NetworkListener {
+
+        @Override
+        public void messageReceived(NetworkInterface networkInterface, NetworkAddress source, Message message) {
+            if (message instanceof Envelope) {
+                Envelope envelope = (Envelope) message;
+                LocalNetworkInterface local = interfaces.get(envelope.destination);
+                if (local != null) {
+                    local.deliver(envelope.message.getSourceAddress(), envelope.message);
+                } else {
+                    Logger.getLogger(LocalNetworkInterfaceFactory.class.getName()).log(Level.WARNING, "unknown destination {0}", envelope.destination);
+                }
+            }
+        }
+
+        @Override
+        public void exceptionHappened(NetworkInterface networkInterface, NetworkAddress remoteAddress, Message message, Throwable cause) {
+            Logger.getLogger(LocalNetworkInterfaceFactory.class.getName()).log(Level.SEVERE, null, cause);
+        }
+
+        @Override
+        public void messageSent(NetworkInterface networkInterface, NetworkAddress destination, Message message) {
+        }
+
+        @Override
+        public void interfaceDown(NetworkInterface networkInterface) {
+        }
+
+        @Override
+        public void interfaceUp(NetworkInterface networkInterface) {
+        }
+    }
+
+    private static class Envelope extends Message {
+
+        final NetworkAddress destination;
+        final Message message;
+
+        public Envelope(NetworkAddress destination, Message message) {
+            this.destination = destination;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.function.BinaryOperator;
+
+/**
+ * An immutable map from non-negative integer keys to values. The map is stored
+ * as a 32-ary bit-partitioned trie. Updates copy only the path from the root to
+ * the modified entry and share all other nodes with the previous version.
+ * Taking a snapshot is therefore O(1) and an update is O(log n).
+ *
+ * The map is intended for dense keys such as peer indices.
+ *
+ * @author Peter
+ * @param <T> the type of the values
+ */
+public final class PersistentIntMap<T> implements Serializable {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentIntMap EMPTY = new PersistentIntMap(new Object[WIDTH], 0, 0);
+
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+
+    private PersistentIntMap(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * @param <T> the type of the values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentIntMap<T> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the number of entries in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value associated with the given key.
+     *
+     * @param key a non-negative key
+     * @return the value or null if the key is not present
+     */
+    public T get(int key) {
+        if (key < 0 || key >= capacity(shift)) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(key >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) node[key & MASK];
+        return value;
+    }
+
+    /**
+     * Returns a map that associates the given key with the given value. This
+     * map is not modified.
+     *
+     * @param key a non-negative key
+     * @param value the new value; must not be null
+     * @return the updated map
+     */
+    public PersistentIntMap<T> with(int key, T value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("negative key " + key);
+        }
+        Object[] newRoot = root;
+        int newShift = shift;
+        while (key >= capacity(newShift)) {
+            Object[] grown = new Object[WIDTH];
+            grown[0] = newRoot;
+            newRoot = grown;
+            newShift += BITS;
+        }
+        boolean[] added = new boolean[1];
+        newRoot = set(newRoot, newShift, key, value, added);
+        return new PersistentIntMap<>(newRoot, newShift, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Merges the given map into this map. Keys that are only present in one of
+     * the maps are taken as is. For keys that are present in both maps, the
+     * resolver decides which value is kept; its first argument is the value of
+     * this map. Subtrees that are shared between both maps are skipped.
+     *
+     * @param other the map to merge into this one
+     * @param resolver picks one of two values present for the same key
+     * @return the merged map; this very instance if nothing changed
+     */
+    public PersistentIntMap<T> merge(PersistentIntMap<T> other, BinaryOperator<T> resolver) {
+        if (other == this || other.size == 0) {
+            return this;
+        }
+        int newShift = Math.max(shift, other.shift);
+        Object[] mine = grow(root, shift, newShift);
+        Object[] theirs = grow(other.root, other.shift, newShift);
+
+        int[] added = new int[1];
+        Object[] merged = merge(mine, theirs, newShift, resolver, added);
+        if (merged == root) {
+            return this;
+        }
+        return new PersistentIntMap<>(merged, newShift, size + added[0]);
+    }
+
+    /**
+     * Calls the visitor for every entry in ascending key order.
+     *
+     * @param visitor the visitor
+     */
+    public void forEach(Visitor<? super T> visitor) {
+        forEach(root, shift, 0, visitor);
+    }
+
+    /**
+     * Receives the entries of a map.
+     *
+     * @param <T> the type of the values
+     */
+    public interface Visitor<T> {
+
+        public void visit(int key, T value);
+    }
+
+    /**
+     * @return the number of keys of a trie with the given shift; larger than
+     * any int for a shift of 30
+     */
+    private static long capacity(int shift) {
+        return 1L << (shift + BITS);
+    }
+
+    private static Object[] grow(Object[] node, int shift, int targetShift) {
+        for (int s = shift; s < targetShift; s += BITS) {
+            Object[] grown = new Object[WIDTH];
+            grown[0] = node;
+            node = grown;
+        }
+        return node;
+    }
+
+    private static Object[] set(Object[] node, int level, int key, Object value, boolean[] added) {
+        Object[] copy = node.clone();
+        int idx = (key >>> level) & MASK;
+        if (level == 0) {
+            added[0] = copy[idx] == null;
+            copy[idx] = value;
+        } else {
+            Object[] child = (Object[]) copy[idx];
+            copy[idx] = set(child == null ? new Object[WIDTH] : child, level - BITS, key, value, added);
+        }
+        return copy;
+    }
+
+    private static <T> Object[] merge(Object[] mine, Object[] theirs, int level, BinaryOperator<T> resolver, int[] added) {
+        if (mine == theirs || theirs == null) {
+            return mine;
+        }
+        if (mine == null) {
+            added[0] += count(theirs, level);
+            return theirs;
+        }
+        Object[] result = mine;
+        for (int i = 0; i < WIDTH; i++) {
+            Object entry;
+            if (level == 0) {
+                @SuppressWarnings("unchecked")
+                T a = (T) mine[i];
+                @SuppressWarnings("unchecked")
+                T b = (T) theirs[i];
+                if (b == null || a == b) {
+                    continue;
+                }
+                if (a == null) {
+                    added[0]++;
+                    entry = b;
+                } else {
+                    entry = resolver.apply(a, b);
+                }
+            } else {
+                entry = merge((Object[]) mine[i], (Object[]) theirs[i], level - BITS, resolver, added);
+            }
+            if (entry != mine[i]) {
+                if (result == mine) {
+                    result = mine.clone();
+                }
+                result[i] = entry;
+            }
+        }
+        return result;
+    }
+
+    private static int count(Object[] node, int level) {
+        int count = 0;
+        for (Object entry : node) {
+            if (entry != null) {
+                count += level == 0 ? 1 : count((Object[]) entry, level - BITS);
+            }
+        }
+        return count;
+    }
+
+    private static <T> void forEach(Object[] node, int level, int offset, Visitor<? super T> visitor) {
+        for (int i = 0; i < WIDTH; i++) {
+            Object entry = node[i];
+            if (entry != null) {
+                int key = offset | (i << level);
+                if (level == 0) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) entry;
+                    visitor.visit(key, value);
+                } else {
+                    forEach((Object[]) entry, level - BITS, key, visitor);
+                }
+            }
+        }
+    }
+}
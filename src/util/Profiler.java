@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2016 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Measures the wall time of the phases of an iteration. Each thread records
+ * into histograms of its own, so recording needs neither locks nor atomic
+ * operations; the histograms of all threads are combined when the results
+ * are read. Profiling is disabled by default and can be switched on and off
+ * at any time; while it is disabled, a measurement costs a read of a
+ * volatile flag.
+ * <p>
+ * The histograms have logarithmic buckets with 32 linear sub-buckets each,
+ * like HDR histograms: durations below 32 ns are exact, all others are
+ * recorded with a relative error below 1/32. Durations are inclusive, e.g.
+ * the time of {@link Phase#UP} contains the time of
+ * {@link Phase#AGGREGATE} and {@link Phase#SELECT_PLAN}.
+ * <p>
+ * Usage:
+ * <pre>
+ * long start = Profiler.start();
+ * ...
+ * Profiler.stop(Profiler.Phase.UP, start);
+ * </pre>
+ *
+ * @author Peter
+ */
+public class Profiler {
+
+    /**
+     * The measured phases.
+     */
+    public enum Phase {
+        UP, DOWN, AGGREGATE, SELECT_PLAN, ARGMIN, COST, SEND, RECEIVE
+    }
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = SUB_COUNT + (64 - SUB_BITS) * SUB_COUNT;
+
+    private static volatile boolean enabled = false;
+
+    private static final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+        Recorder r = new Recorder();
+        recorders.add(r);
+        return r;
+    });
+
+    private Profiler() {
+    }
+
+    /**
+     * Switches profiling on or off.
+     *
+     * @param enabled true, if the phases should be measured
+     */
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+
+    /**
+     * @return true, if the phases are measured
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a measurement.
+     *
+     * @return the start time, or 0 if profiling is disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Completes a measurement that was started with {@link #start()}.
+     *
+     * @param phase the measured phase
+     * @param start the value returned by {@link #start()}
+     */
+    public static void stop(Phase phase, long start) {
+        if (start != 0) {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param phase the measured phase
+     * @param nanos the duration in nanoseconds
+     */
+    public static void record(Phase phase, long nanos) {
+        recorder.get().record(phase.ordinal(), Math.max(0, nanos));
+    }
+
+    /**
+     * Discards all measurements.
+     */
+    public static void reset() {
+        for (Recorder r : recorders) {
+            r.reset();
+        }
+    }
+
+    /**
+     * Combines the measurements of all threads. Measurements that are
+     * recorded concurrently may or may not be included.
+     *
+     * @param phase the phase
+     * @return the histogram of the phase
+     */
+    public static Histogram getHistogram(Phase phase) {
+        Histogram histogram = new Histogram();
+        for (Recorder r : recorders) {
+            histogram.add(r.histograms[phase.ordinal()]);
+        }
+        return histogram;
+    }
+
+    /**
+     * Prints count, total, mean, p50, p99 and max per phase.
+     *
+     * @param out the output stream
+     */
+    public static void print(PrintStream out) {
+        out.println("profile:");
+        out.println(String.format(Locale.US, "%-12s %12s %12s %10s %10s %10s %10s",
+                "phase", "count", "total ms", "mean us", "p50 us", "p99 us", "max us"));
+        for (Phase phase : Phase.values()) {
+            Histogram h = getHistogram(phase);
+            if (h.getCount() == 0) {
+                continue;
+            }
+            out.println(String.format(Locale.US, "%-12s %12d %12.1f %10.2f %10.2f %10.2f %10.2f",
+                    phase, h.getCount(), h.getTotal() / 1e6, h.getMean() / 1e3,
+                    h.getPercentile(50) / 1e3, h.getPercentile(99) / 1e3, h.getMax() / 1e3));
+        }
+    }
+
+    /**
+     * Writes the results per phase as CSV with the columns phase, count,
+     * total, mean, p50, p99 and max; all durations in nanoseconds.
+     *
+     * @param out the output stream
+     */
+    public static void writeCsv(PrintStream out) {
+        out.println("phase,count,total,mean,p50,p99,max");
+        for (Phase phase : Phase.values()) {
+            Histogram h = getHistogram(phase);
+            out.println(String.format(Locale.US, "%s,%d,%d,%.1f,%d,%d,%d", phase, h.getCount(), h.getTotal(),
+                    h.getMean(), h.getPercentile(50), h.getPercentile(99), h.getMax()));
+        }
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return SUB_COUNT + shift * SUB_COUNT + (int) (nanos >>> shift) - SUB_COUNT;
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        long sub = SUB_COUNT + (bucket - SUB_COUNT) % SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * The histograms of one thread; only written by this thread.
+     */
+    private static class Recorder {
+
+        final Histogram[] histograms = new Histogram[Phase.values().length];
+
+        Recorder() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new Histogram();
+            }
+        }
+
+        void record(int phase, long nanos) {
+            histograms[phase].record(nanos);
+        }
+
+        void reset() {
+            for (Histogram histogram : histograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds.
+     */
+    public static class Histogram {
+
+        private final long[] counts = new long[NUM_BUCKETS];
+        private long count;
+        private long total;
+        private long max;
+
+        void record(long nanos) {
+            counts[bucket(nanos)]++;
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            total = 0;
+            max = 0;
+        }
+
+        /**
+         * @return the number of measurements
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of all durations
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the mean duration
+         */
+        public double getMean() {
+            return count == 0 ? 0 : total / (double) count;
+        }
+
+        /**
+         * @return the longest duration
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100
+         * @return an upper bound of the duration at the given percentile
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}